@@ -0,0 +1,278 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import utils.SplitRandom;
+
+/**
+ * This class simulates a set of modules and channels, stepping only the active modules.
+ * A module becomes inactive when it is idle after having been simulated (see Module.isIdle()),
+ * and is woken up by a channel when a request is routed to the output port it reads.
+ * Since an idle module only increments its cycle counter, inactive modules are not touched at all:
+ * their counter is caught up (via Module.skipCycles()) when they are woken up or synchronized.
+ * Active modules are simulated in their registration order, then all the channels, so that
+ * the results are the same as when stepping all the modules in this order.
+ * 
+ * When a ForkJoinPool is given, a cycle is simulated in two phases. In the evaluation phase, the active
+ * modules are simulated in parallel: modules only read their own input ports, and their writes to the channels
+ * are recorded in a per-module ChannelWriteLog. In the commit phase, the logs are applied in the registration
+ * order of the modules, which gives exactly the same channel contents as the sequential simulation.
+ * Then the channels are simulated sequentially.
+ * 
+ * The scheduler also owns the seed of the simulation: each channel draws the latencies of its requests from its
+ * own generator, split from the generator of the seed in the registration order of the channels. The same seed
+ * thus gives the same simulation, whether modules are simulated sequentially or in parallel.
+ * @author QLM
+ *
+ */
+public class ActivityScheduler {
+
+	private List<Module> m_modules;
+	private Map<Module, Integer> m_module2idx;
+	private List<Channel> m_channels;
+
+	private BitSet m_active;
+	/**
+	 * First cycle not yet simulated by each module
+	 */
+	private int [] m_next_cycle;
+
+	private int m_cycle;
+
+	/**
+	 * Minimum number of modules simulated by a task in parallel mode
+	 */
+	private static final int parallelGrain = 4;
+
+	/**
+	 * Seed used when setSeed() is not called
+	 */
+	public static final long defaultSeed = 0;
+
+	private SplitRandom m_random;
+
+	private ForkJoinPool m_pool;
+	private List<ChannelWriteLog> m_logs;
+	private int [] m_eval_list;
+	private boolean [] m_eval_idle;
+
+	public ActivityScheduler() {
+		m_modules = new ArrayList<Module>();
+		m_module2idx = new HashMap<Module, Integer>();
+		m_channels = new ArrayList<Channel>();
+		m_random = new SplitRandom(defaultSeed);
+		m_active = new BitSet();
+		m_next_cycle = new int[16];
+		m_cycle = 0;
+		m_pool = null;
+		m_logs = new ArrayList<ChannelWriteLog>();
+		m_eval_list = new int[16];
+		m_eval_idle = new boolean[16];
+	}
+
+	/**
+	 * Adds a module to the scheduler. Modules are simulated in the order in which they are added.
+	 * The module is active until it is found idle.
+	 * @param m
+	 */
+	public void addModule(Module m) {
+		assert (!m_module2idx.containsKey(m));
+		int idx = m_modules.size();
+		m_modules.add(m);
+		m_module2idx.put(m, idx);
+		if (idx == m_next_cycle.length) {
+			int [] next_cycle = new int[2 * idx];
+			System.arraycopy(m_next_cycle, 0, next_cycle, 0, idx);
+			m_next_cycle = next_cycle;
+			m_eval_list = new int[2 * idx];
+			m_eval_idle = new boolean[2 * idx];
+		}
+		m_next_cycle[idx] = m_cycle;
+		m_logs.add(new ChannelWriteLog());
+		m_active.set(idx);
+	}
+
+	/**
+	 * Adds a channel to the scheduler. The channel will wake up the modules reading its output ports.
+	 * @param c
+	 */
+	public void addChannel(Channel c) {
+		m_channels.add(c);
+		c.setScheduler(this);
+		c.setDeferredWrites(m_pool != null);
+		c.setRandom(m_random.split());
+	}
+
+	/**
+	 * Sets the seed of the simulation, and reinitializes the generators of all the channels.
+	 * Must be called before the first simulated cycle.
+	 */
+	public void setSeed(long seed) {
+		m_random = new SplitRandom(seed);
+		for (Channel c : m_channels) {
+			c.setRandom(m_random.split());
+		}
+	}
+
+	/**
+	 * Enables the parallel simulation of the modules.
+	 * @param pool : the pool on which modules are simulated, or null for a sequential simulation
+	 */
+	public void setPool(ForkJoinPool pool) {
+		m_pool = pool;
+		for (Channel c : m_channels) {
+			c.setDeferredWrites(pool != null);
+		}
+	}
+
+	/**
+	 * Marks the module m as active: it will be simulated during the next cycle.
+	 * @param m
+	 */
+	void wake(Module m) {
+		m_active.set(m_module2idx.get(m));
+	}
+
+	private void catchUp(int idx) {
+		int lag = m_cycle - m_next_cycle[idx];
+		if (lag > 0) {
+			m_modules.get(idx).skipCycles(lag);
+		}
+		m_next_cycle[idx] = m_cycle;
+	}
+
+	/**
+	 * Evaluation of a range of modules of m_eval_list, made in parallel
+	 */
+	private class EvalTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private int m_lo;
+		private int m_hi;
+
+		EvalTask(int lo, int hi) {
+			m_lo = lo;
+			m_hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if (m_hi - m_lo <= parallelGrain) {
+				for (int k = m_lo; k < m_hi; k++) {
+					evaluate(k);
+				}
+			}
+			else {
+				int mid = (m_lo + m_hi) >>> 1;
+				invokeAll(new EvalTask(m_lo, mid), new EvalTask(mid, m_hi));
+			}
+		}
+	}
+
+	private void evaluate(int k) {
+		int i = m_eval_list[k];
+		Module m = m_modules.get(i);
+		ChannelWriteLog log = m_logs.get(i);
+		catchUp(i);
+		log.begin();
+		try {
+			m.simulate1Cycle();
+		}
+		finally {
+			log.end();
+		}
+		m_next_cycle[i] = m_cycle + 1;
+		m_eval_idle[k] = m.isIdle();
+	}
+
+	public void simulate1Cycle() {
+		int nbActive = m_active.cardinality();
+		if (m_pool != null && nbActive > parallelGrain) {
+			int k = 0;
+			for (int i = m_active.nextSetBit(0); i >= 0; i = m_active.nextSetBit(i + 1)) {
+				m_eval_list[k++] = i;
+			}
+			// Evaluation phase
+			m_pool.invoke(new EvalTask(0, nbActive));
+			// Commit phase
+			for (k = 0; k < nbActive; k++) {
+				int i = m_eval_list[k];
+				m_logs.get(i).commit();
+				if (m_eval_idle[k]) {
+					m_active.clear(i);
+				}
+			}
+		}
+		else {
+			for (int i = m_active.nextSetBit(0); i >= 0; i = m_active.nextSetBit(i + 1)) {
+				Module m = m_modules.get(i);
+				catchUp(i);
+				m.simulate1Cycle();
+				m_next_cycle[i] = m_cycle + 1;
+				if (m.isIdle()) {
+					m_active.clear(i);
+				}
+			}
+		}
+		for (Channel c : m_channels) {
+			c.simulate1Cycle();
+		}
+		m_cycle++;
+	}
+
+	/**
+	 * Advances all the channels and the cycle counter by nbCycles cycles.
+	 * Must be called only when no module is active and no channel can pop a request during these cycles.
+	 * @param nbCycles
+	 */
+	public void skipCycles(int nbCycles) {
+		assert (m_active.isEmpty());
+		for (Channel c : m_channels) {
+			c.skipCycles(nbCycles);
+		}
+		m_cycle += nbCycles;
+	}
+
+	/**
+	 * Catches up the cycle counter of the module m, so that its state can be accessed from outside
+	 * the scheduler (e.g. to add processor requests).
+	 * @param m
+	 */
+	public void synchronize(Module m) {
+		catchUp(m_module2idx.get(m));
+	}
+
+	/**
+	 * Catches up the cycle counter of all the modules.
+	 */
+	public void synchronizeAll() {
+		for (int i = 0; i < m_modules.size(); i++) {
+			catchUp(i);
+		}
+	}
+
+	/**
+	 * @return true if no module is active
+	 */
+	public boolean isQuiescent() {
+		return m_active.isEmpty();
+	}
+
+	/**
+	 * @return the number of modules active for the next cycle
+	 */
+	public int getNbActiveModules() {
+		return m_active.cardinality();
+	}
+
+	public int getCycle() {
+		return m_cycle;
+	}
+}
@@ -2,6 +2,7 @@ package model;
 
 /**
  * This class is taken from soclib, and serves to facilitate address manipulation.
+ * Addresses are 64-bit: a field can use up to all the bits of the address.
  * @author QLM
  *
  */
@@ -12,12 +13,11 @@ public class AddressMaskingTable {
 	long m_low_mask;
 
 	void init(long use_bits, long drop_bits) {
-		// assert(((use_bits + drop_bits) <= (sizeof(data_t) * 8)) &&
-		// "Error in AddressMaskingTable : use_bits + drop_bits too large");
+		assert (use_bits + drop_bits <= 8 * 8) : "Error in AddressMaskingTable : use_bits + drop_bits too large";
 
 		m_use_bits = use_bits;
 		m_drop_bits = drop_bits;
-		m_low_mask = (1 << use_bits) - 1;
+		m_low_mask = (use_bits == 8 * 8) ? -1L : (1L << use_bits) - 1;
 	}
 
 	public AddressMaskingTable() {
@@ -37,12 +37,12 @@ public class AddressMaskingTable {
 
 		while ((m & 1) == 0) {
 			drop_bits++;
-			m >>= 1;
+			m >>>= 1;
 		}
 
-		while ((m & 1) != 0 && (use_bits + drop_bits <= 8 * 4)) {
+		while ((m & 1) != 0 && (use_bits + drop_bits < 8 * 8)) {
 			use_bits++;
-			m >>= 1;
+			m >>>= 1;
 		}
 
 		init(use_bits, drop_bits);
@@ -62,11 +62,11 @@ public class AddressMaskingTable {
 	}
 
 	long get_value(long where) {
-		return (where >> m_drop_bits) & m_low_mask;
+		return (where >>> m_drop_bits) & m_low_mask;
 	}
 
 	long get(long where) {
-		return (where >> m_drop_bits) & m_low_mask;
+		return (where >>> m_drop_bits) & m_low_mask;
 	}
 
 	public String toString() {
@@ -0,0 +1,23 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Grants the source whose waiting request was pushed first; ties are broken by source order.
+ * @author QLM
+ *
+ */
+public class AgeArbiter implements Arbiter {
+
+	public int grant(List<Request> heads) {
+		int res = -1;
+		for (int i = 0; i < heads.size(); i++) {
+			Request req = heads.get(i);
+			if (req != null && (res == -1 || req.getPushCycle() < heads.get(res).getPushCycle())) {
+				res = i;
+			}
+		}
+		assert (res != -1);
+		return res;
+	}
+}
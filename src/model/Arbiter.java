@@ -0,0 +1,21 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Arbitration between the sources of a channel whose bandwidth is limited.
+ * An arbiter is associated to a single channel and can keep state between grants.
+ * @author QLM
+ *
+ */
+public interface Arbiter {
+
+	/**
+	 * @param heads : for each source of the channel, in the order in which they sent their first request,
+	 *                the oldest request waiting for the link, or null if the source has no waiting request;
+	 *                at least one element is not null
+	 * @return the index in heads of the source granted
+	 */
+	public int grant(List<Request> heads);
+
+}
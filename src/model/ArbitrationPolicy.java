@@ -0,0 +1,29 @@
+package model;
+
+/**
+ * Arbitration policies available for the channels, each value building a new arbiter.
+ * @author QLM
+ *
+ */
+public enum ArbitrationPolicy {
+
+	ROUND_ROBIN {
+		public Arbiter newArbiter() {
+			return new RoundRobinArbiter();
+		}
+	},
+
+	FIXED_PRIORITY {
+		public Arbiter newArbiter() {
+			return new FixedPriorityArbiter();
+		}
+	},
+
+	AGE {
+		public Arbiter newArbiter() {
+			return new AgeArbiter();
+		}
+	};
+
+	public abstract Arbiter newArbiter();
+}
@@ -1,7 +1,5 @@
 package model;
 
-import java.util.List;
-
 /**
  * A class to aggregate the results of a cache access (from cache controller to cache)
  * @author QLM
@@ -12,5 +10,5 @@ public class CacheAccessResult {
 	boolean victimFound;
 	long victimAddress;
 	boolean victimDirty;
-	List<Long> data;
+	long [] data; // copy of the line if the victim is dirty, null otherwise
 }
@@ -4,8 +4,6 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.List;
 
 import model.LineState.cacheSlotState;
 
@@ -13,91 +11,192 @@ import utils.Utile;
 
 /**
  * This class models the data and metadata parts of the L1 cache.
+ * The tag of a way is a long, its state, dirty and exclusive bits are packed in a byte, and the data words are
+ * stored as int; the arrays are indexed by set first, so that the ways of a set are contiguous.
+ * A line is found without scanning the ways of its set: each set has a small open-addressing hash table from the
+ * tags to the ways holding a line (state other than EMPTY), so that highly associative caches cost the same
+ * as direct-mapped ones on an access.
+ * The way in which a line is allocated is chosen by the replacement policy of the cache (NRU by default).
  * Partially taken from soclib.
  * @author QLM
  */
 public class CacheL1 {
 
-	private long [] r_data;
-	private long [] r_tag;
-	private cacheSlotState [] r_state;
-	private boolean [] r_lru;
-	private boolean [] r_dirty;
-	private boolean [] r_exclu;
+	/*
+	 * Metadata of a way, packed in a byte:
+	 *  - bits 0-1: state (ordinal of cacheSlotState)
+	 *  - bit 2: dirty
+	 *  - bit 3: exclusive
+	 */
+	private static final int stateMask = 0x3;
+	private static final int dirtyBit = 1 << 2;
+	private static final int excluBit = 1 << 3;
+	private static final cacheSlotState [] states = cacheSlotState.values();
+
+	private long [] r_tag; // [set][way]
+	private byte [] r_meta; // [set][way]
+	private int [] r_data; // [set][way][word], words of 32 bits
+	private byte [] r_lookup; // [set][bucket], way + 1 of the line whose tag hashes to the bucket, or 0
 	
 	private int traceLevel = 1;
 
-	int m_id; // @QM unused
+	int m_id; // seeds the random choices of the replacement policy
 	private int m_ways;
 	private int m_sets;
 	private int m_words;
+	private int m_buckets; // per set, a power of 2 at least twice the number of ways
+	private int m_bucket_bits;
+
+	private Replacement m_replacement;
 
 	private AddressMaskingTable m_x;
 	private AddressMaskingTable m_y;
 	private AddressMaskingTable m_z;
 
-	private Long data(int way, long set, long word) {
-		return r_data[(way * m_sets * m_words) + ((int) set * m_words) + (int) word];
+	private int metaIndex(int way, long set) {
+		return ((int) set * m_ways) + way;
+	}
+
+	/**
+	 * @return the index in r_data of the first word of the line, the words of a line being contiguous
+	 */
+	private int lineIndex(int way, long set) {
+		return (((int) set * m_ways) + way) * m_words;
+	}
+
+	/**
+	 * @return the word, sign-extended as the 32-bit values written by the processors
+	 */
+	private long data(int way, long set, long word) {
+		return r_data[lineIndex(way, set) + (int) word];
 	}
 
 	private void setData(int way, long set, long word, long val) {
-		r_data[(way * m_sets * m_words) + ((int) set * m_words) + (int) word] = val;
+		r_data[lineIndex(way, set) + (int) word] = (int) val;
 	}
 
-	private Long tag(int way, long set) {
-		return r_tag[(way * m_sets) + (int) set];
+	private long [] copyLine(int way, long set) {
+		long [] line = new long[m_words];
+		int index = lineIndex(way, set);
+		for (int word = 0; word < m_words; word++) {
+			line[word] = r_data[index + word];
+		}
+		return line;
 	}
 
-	private void setTag(int way, long set, long val) {
-		r_tag[(way * m_sets) + (int) set] = val;
+	private long tag(int way, long set) {
+		return r_tag[metaIndex(way, set)];
 	}
 
-	private Boolean lru(int way, long set) {
-		return r_lru[(way * m_sets) + (int) set];
+	/**
+	 * The tag of a way can only change while the way is EMPTY, as it indexes the lookup table otherwise
+	 */
+	private void setTag(int way, long set, long val) {
+		assert (state(way, set) == cacheSlotState.EMPTY);
+		r_tag[metaIndex(way, set)] = val;
 	}
 
-	private void setLru(int way, long set, boolean val) {
-		r_lru[(way * m_sets) + (int) set] = val;
+	private void setBit(int way, long set, int bit, boolean val) {
+		int i = metaIndex(way, set);
+		if (val) {
+			r_meta[i] |= bit;
+		}
+		else {
+			r_meta[i] &= ~bit;
+		}
 	}
 
-	private Boolean dirty(int way, long set) {
-		return r_dirty[(way * m_sets) + (int) set];
+	private boolean dirty(int way, long set) {
+		return (r_meta[metaIndex(way, set)] & dirtyBit) != 0;
 	}
 
 	private void setDirty(int way, long set, boolean val) {
-		r_dirty[(way * m_sets) + (int) set] = val;
+		setBit(way, set, dirtyBit, val);
 	}
 
-	private Boolean exclu(int way, long set) {
-		return r_exclu[(way * m_sets) + (int) set];
+	private boolean exclu(int way, long set) {
+		return (r_meta[metaIndex(way, set)] & excluBit) != 0;
 	}
 
 	private void setExclu(int way, long set, boolean val) {
-		r_exclu[(way * m_sets) + (int) set] = val;
+		setBit(way, set, excluBit, val);
 	}
 
 	private cacheSlotState state(int way, long set) {
-		return r_state[(way * m_sets) + (int) set];
+		return states[r_meta[metaIndex(way, set)] & stateMask];
 	}
 
+	/**
+	 * Updates the state of a way, and the lookup table of its set when the way becomes EMPTY or leaves EMPTY
+	 */
 	private void setState(int way, long set, cacheSlotState val) {
-		r_state[(way * m_sets) + (int) set] = val;
+		cacheSlotState prev = state(way, set);
+		if (prev == cacheSlotState.EMPTY && val != cacheSlotState.EMPTY) {
+			index(way, set);
+		}
+		else if (prev != cacheSlotState.EMPTY && val == cacheSlotState.EMPTY) {
+			unindex(way, set);
+		}
+		int i = metaIndex(way, set);
+		r_meta[i] = (byte) ((r_meta[i] & ~stateMask) | val.ordinal());
 	}
 
-	private void setCacheLru(int way, long set) {
-		int way2;
-
-		setLru(way, set, true);
+	/**
+	 * @return the bucket of the lookup table of a set from which the tag is searched (Fibonacci hashing)
+	 */
+	private int bucket(long tag) {
+		return (int) ((tag * 0x9e3779b97f4a7c15L) >>> (64 - m_bucket_bits));
+	}
 
-		for (way2 = 0; way2 < m_ways; way2++) {
-			if (lru(way2, set) == false) {
-				return;
+	/**
+	 * @return the way of the set holding a line (state other than EMPTY) with the tag, or -1
+	 */
+	private int lookup(long tag, long set) {
+		int base = (int) set * m_buckets;
+		int mask = m_buckets - 1;
+		// the table is never full, so the search ends on a free bucket
+		for (int b = bucket(tag); ; b = (b + 1) & mask) {
+			int way = r_lookup[base + b] - 1;
+			if (way == -1 || r_tag[metaIndex(way, set)] == tag) {
+				return way;
 			}
 		}
-		// if all lines are new, they all become old
-		for (way2 = 0; way2 < m_ways; way2++) {
-			setLru(way2, set, false);
+	}
+
+	/**
+	 * Adds the way to the lookup table of its set, with its current tag
+	 */
+	private void index(int way, long set) {
+		assert (lookup(tag(way, set), set) == -1);
+		int base = (int) set * m_buckets;
+		int mask = m_buckets - 1;
+		int b = bucket(tag(way, set));
+		while (r_lookup[base + b] != 0) {
+			b = (b + 1) & mask;
 		}
+		r_lookup[base + b] = (byte) (way + 1);
+	}
+
+	/**
+	 * Removes the way from the lookup table of its set. The following entries which could not be found anymore
+	 * from their bucket are moved back into the freed bucket, so that no tombstone is needed.
+	 */
+	private void unindex(int way, long set) {
+		int base = (int) set * m_buckets;
+		int mask = m_buckets - 1;
+		int b = bucket(tag(way, set));
+		while (r_lookup[base + b] != way + 1) {
+			b = (b + 1) & mask;
+		}
+		for (int next = (b + 1) & mask; r_lookup[base + next] != 0; next = (next + 1) & mask) {
+			int home = bucket(tag(r_lookup[base + next] - 1, set));
+			// the entry can fill the hole if its bucket is not in the cyclic range (b, next]
+			if (((next - home) & mask) >= ((next - b) & mask)) {
+				r_lookup[base + b] = r_lookup[base + next];
+				b = next;
+			}
+		}
+		r_lookup[base + b] = 0;
 	}
 
 	CacheL1(String name, int id, int nways, int nsets, int nwords) {
@@ -116,9 +215,8 @@ public class CacheL1 {
 		assert(Utile.isPowerOf2(nways));
 		assert(Utile.isPowerOf2(nsets));
 		assert(Utile.isPowerOf2(nwords));
-		assert(nwords <= 16);
-		assert(nsets <= 1024);
-		assert(nways <= 4);
+		assert(nways <= 64); // ways are handled as bit masks by the replacement policies
+		assert((long) nways * nsets * nwords <= Integer.MAX_VALUE);
 
 		if (traceLevel > 4) {
 			System.out.println("constructing " + name);
@@ -130,29 +228,39 @@ public class CacheL1 {
 			System.out.println(" m_z: " + m_z);
 			System.out.println();
 		}
-		r_data = new long[nways * nsets * nwords];
+		m_buckets = 2 * nways;
+		m_bucket_bits = Utile.log2(m_buckets);
+		r_data = new int[nways * nsets * nwords];
 		r_tag = new long[nways * nsets];
-		r_state = new cacheSlotState[nways * nsets];
-		r_lru = new boolean[nways * nsets];
-		r_dirty = new boolean[nways * nsets];
-		r_exclu = new boolean[nways * nsets];
+		r_meta = new byte[nways * nsets];
+		r_lookup = new byte[m_buckets * nsets];
+		m_replacement = ReplacementPolicy.NRU.newReplacement(nsets, nways, id);
 		
 		reset();
 	}
 
+	/**
+	 * Replaces the replacement policy of the cache; the replacement state starts from its reset value.
+	 * The random choices of the policy, if any, are seeded by the cache id.
+	 */
+	void setReplacementPolicy(ReplacementPolicy policy) {
+		m_replacement = policy.newReplacement(m_sets, m_ways, m_id);
+	}
+
 	public void reset() {
 		for (int way = 0; way < m_ways; way++) {
 			for (int set = 0; set < m_sets; set++) {
 				for (int word = 0; word < m_words; word++) {
 					setData(way, set, word, 0);
 				}
-				setTag(way, set, 0);
-				setState(way, set, cacheSlotState.EMPTY);
-				setLru(way, set, false);
-				setDirty(way, set, false);
-				setExclu(way, set, false);
+				r_tag[metaIndex(way, set)] = 0;
+				r_meta[metaIndex(way, set)] = (byte) cacheSlotState.EMPTY.ordinal();
 			}
 		}
+		for (int i = 0; i < r_lookup.length; i++) {
+			r_lookup[i] = 0;
+		}
+		m_replacement.reset();
 	}
 
 	boolean isSameLine(long ad1, long ad2) {
@@ -172,10 +280,10 @@ public class CacheL1 {
 	 *  - ZOMBIE : (matching tag) and (state == ZOMBIE)
 	 *  - MISS : no matching tag or EMPTY state
 	 *  @param ad The address to read
-	 *  @param dt The data read, updated by this function (should be an empty list)
+	 *  @param dt The data read, written by this function in dt[0] on a VALID hit
 	 *  @return true if VALID or ZOMBIE, false otherwise
 	 */
-	boolean read(long ad, List<Long> dt, LineState state) {
+	boolean read(long ad, long [] dt, LineState state) {
 		long tag = m_z.get(ad);
 		long set = m_y.get(ad);
 		long word = m_x.get(ad);
@@ -183,22 +291,20 @@ public class CacheL1 {
 
 		// default return values
 		state.state = cacheSlotState.EMPTY;
-		dt.clear();
 
-		for (int way = 0; way < m_ways; way++) {
-			if (tag == tag(way, set)) {
-				if (state(way, set) == cacheSlotState.VALID) {
-					state.state = cacheSlotState.VALID;
-					state.dirty = dirty(way, set);
-					state.exclu = exclu(way, set);
-					dt.add(data(way, set, word));
-					setCacheLru(way, set);
-					return true;
-				}
-				else if (state(way, set) == cacheSlotState.ZOMBI) {
-					state.state = cacheSlotState.ZOMBI;
-					return true;
-				}
+		int way = lookup(tag, set);
+		if (way != -1) {
+			if (state(way, set) == cacheSlotState.VALID) {
+				state.state = cacheSlotState.VALID;
+				state.dirty = dirty(way, set);
+				state.exclu = exclu(way, set);
+				dt[0] = data(way, set, word);
+				m_replacement.touch((int) set, way);
+				return true;
+			}
+			else if (state(way, set) == cacheSlotState.ZOMBI) {
+				state.state = cacheSlotState.ZOMBI;
+				return true;
 			}
 		}
 		return false;
@@ -217,16 +323,15 @@ public class CacheL1 {
 		long set = m_y.get(ad);
 		long word = m_x.get(ad);
 
-		for (int way = 0; way < m_ways; way++) {
-			if ((tag == tag(way, set)) && (state(way, set) == cacheSlotState.VALID)) {
-				assert (exclu(way, set));
-				long mask = Utile.be2mask(be);
-				long prev = data(way, set, word);
-				setData(way, set, word, (mask & dt) | (~mask & prev));
-				setCacheLru(way, set);
-				setDirty(way, set, true);
-				return;
-			}
+		int way = lookup(tag, set);
+		if (way != -1 && state(way, set) == cacheSlotState.VALID) {
+			assert (exclu(way, set));
+			long mask = Utile.be2mask(be);
+			long prev = data(way, set, word);
+			setData(way, set, word, (mask & dt) | (~mask & prev));
+			m_replacement.touch((int) set, way);
+			setDirty(way, set, true);
+			return;
 		}
 		assert(false);
 	}
@@ -251,14 +356,12 @@ public class CacheL1 {
 		long ad_tag = m_z.get(ad);
 		long ad_set = m_y.get(ad);
 
-		for (int _way = 0; _way < m_ways; _way++) {
-			if ((ad_tag == tag(_way, ad_set))
-					&& (state(_way, ad_set) != cacheSlotState.EMPTY)) {
-				state.state = state(_way, ad_set);
-				state.dirty = dirty(_way, ad_set);
-				state.exclu = exclu(_way, ad_set);
-				return;
-			}
+		int _way = lookup(ad_tag, ad_set);
+		if (_way != -1) {
+			state.state = state(_way, ad_set);
+			state.dirty = dirty(_way, ad_set);
+			state.exclu = exclu(_way, ad_set);
+			return;
 		}
 		// return value if not (VALID or ZOMBIE)
 		state.state = cacheSlotState.EMPTY;
@@ -275,25 +378,42 @@ public class CacheL1 {
 		long ad_tag = m_z.get(ad);
 		long ad_set = m_y.get(ad);
 
-		for (int _way = 0; _way < m_ways; _way++) {
-			if ((ad_tag == tag(_way, ad_set))
-					&& (state(_way, ad_set) != cacheSlotState.EMPTY)) {
-				setState(_way, ad_set, state.state);
-				setDirty(_way, ad_set, state.dirty);
-				setExclu(_way, ad_set, state.exclu);
-				return;
-			}
+		int _way = lookup(ad_tag, ad_set);
+		if (_way != -1) {
+			setState(_way, ad_set, state.state);
+			setDirty(_way, ad_set, state.dirty);
+			setExclu(_way, ad_set, state.exclu);
 		}
 	}
 	
 
 	/**
-	 * This function selects a victim slot (way) in an associative set.
-	 * It can fail if all ways are in ZOMBIE state. The algorithm is the following:
-	 * - searches first an EMPTY slot
-	 * - if there is no empty slot, searches an OLD slot (according to the LRU bit), not in ZOMBIE state 
-	 * - if there is none, we take the first not ZOMBIE slot.
-	 * - if there is none, returns an empty result
+	 * Chooses the way of a set in which a line is allocated:
+	 * - the first EMPTY way
+	 * - if there is none, the way chosen by the replacement policy among the ways not in ZOMBIE state
+	 * - if there is none, -1
+	 */
+	private int allocWay(long set) {
+		long candidates = 0;
+		for (int way = 0; way < m_ways; way++) {
+			cacheSlotState st = state(way, set);
+			if (st == cacheSlotState.EMPTY) {
+				return way;
+			}
+			if (st != cacheSlotState.ZOMBI) {
+				candidates |= 1L << way;
+			}
+		}
+		if (candidates == 0) {
+			return -1;
+		}
+		return m_replacement.victim((int) set, candidates);
+	}
+
+	/**
+	 * This function selects a victim slot (way) in an associative set, as allocWay().
+	 * It can fail if all ways are in ZOMBIE state, in which case an empty result is returned.
+	 * setLine() then allocates the line in the same way, unless the set is modified in between.
 	 * @param ad
 	 * @return
 	 */
@@ -307,49 +427,21 @@ public class CacheL1 {
 		result.victimDirty = false;
 		result.data = null;
 
-		// Search first empty slot
-		for (int _way = 0; _way < m_ways && !(result.found); _way++) {
-			if (state(_way, _set) == cacheSlotState.EMPTY) {
-				result.found = true; // Empty slot: no victim
-				return result;
-			}
+		int _way = allocWay(_set);
+		if (_way == -1) {
+			// no slot found
+			return result;
 		}
-
-		// Search first not zombie old slot
-		for (int _way = 0; _way < m_ways && !(result.found); _way++) {
-			if (!lru(_way, _set)
-					&& (state(_way, _set) != cacheSlotState.ZOMBI)) {
-				result.found = true;
-				result.victimFound = true;
-				result.victimAddress = (tag(_way, _set) * m_sets + _set) * m_words * 4;
-				result.victimDirty = dirty(_way, _set);
-				if (result.victimDirty) {
-					result.data = new ArrayList<Long>();
-					for (int word = 0; word < m_words; word++) {
-						result.data.add(data(_way, _set, word));
-					}
-				}
-				return result;
-			}
+		result.found = true;
+		if (state(_way, _set) == cacheSlotState.EMPTY) {
+			return result; // Empty slot: no victim
 		}
-
-		// Search first not zombie slot
-		for (int _way = 0; _way < m_ways && !(result.found); _way++) {
-			if (state(_way, _set) != cacheSlotState.ZOMBI) {
-				result.found = true;
-				result.victimFound = true;
-				result.victimAddress = (tag(_way, _set) * m_sets + _set) * m_words * 4;
-				result.victimDirty = dirty(_way, _set);
-				if (result.victimDirty) {
-					result.data = new ArrayList<Long>();
-					for (int word = 0; word < m_words; word++) {
-						result.data.add(data(_way, _set, word));
-					}
-				}
-				return result;
-			}
+		result.victimFound = true;
+		result.victimAddress = (tag(_way, _set) * m_sets + _set) * m_words * 4;
+		result.victimDirty = dirty(_way, _set);
+		if (result.victimDirty) {
+			result.data = copyLine(_way, _set);
 		}
-		// no slot found
 		return result;
 	}
 	
@@ -357,46 +449,33 @@ public class CacheL1 {
 	/**
 	 * Updates the cache with a line copy. The data part and directory are accessed.
 	 * @param ad The address of the line
-	 * @param buf A list containing the values of the words of the line
+	 * @param buf An array containing the values of the words of the line
 	 * @param exclu true if the line is in exclusive state, false otherwise
 	 * Note: when the ZOMBIE state is used, the controller must guarantee that at least one way
 	 * is not in ZOMBIE state, using the readSelect method.
 	 */
-	void setLine(long ad, List<Long> buf, boolean exclu) {
+	private void setLine(int way, long set, long [] buf) {
+		int index = lineIndex(way, set);
+		for (int word = 0; word < m_words; word++) {
+			r_data[index + word] = (int) buf[word];
+		}
+	}
+
+	void setLine(long ad, long [] buf, boolean exclu) {
 		long _set = m_y.get(ad);
 		long tag = m_z.get(ad);
 
-		// Search first empty slot
-		for (int _way = 0; _way < m_ways; _way++) {
-			if (state(_way, _set) == cacheSlotState.EMPTY) {
-				setTag(_way, _set, tag);
-				setState(_way, _set, cacheSlotState.VALID);
-				setExclu(_way, _set, exclu);
-				setCacheLru(_way, _set);
-
-				for (int _word = 0; _word < m_words; _word++) {
-					setData(_way, _set, _word, buf.get(_word));
-				}
-				return;
-			}
+		int _way = allocWay(_set);
+		assert (_way != -1);
+		if (state(_way, _set) != cacheSlotState.EMPTY) {
+			setState(_way, _set, cacheSlotState.EMPTY); // the victim is evicted
 		}
+		setTag(_way, _set, tag);
+		setState(_way, _set, cacheSlotState.VALID);
+		setExclu(_way, _set, exclu);
+		m_replacement.fill((int) _set, _way);
 
-		// Search first not zombie old slot
-		for (int _way = 0; _way < m_ways; _way++) {
-			if (!lru(_way, _set)
-					&& (state(_way, _set) != cacheSlotState.ZOMBI)) {
-				setTag(_way, _set, tag);
-				setState(_way, _set, cacheSlotState.VALID);
-				setExclu(_way, _set, exclu);
-				setCacheLru(_way, _set);
-
-				for (int _word = 0; _word < m_words; _word++) {
-					setData(_way, _set, _word, buf.get(_word));
-				}
-				return;
-			}
-		}
-		assert(false);
+		setLine(_way, _set, buf);
 	}
 
 	
@@ -421,25 +500,20 @@ public class CacheL1 {
 		result.victimDirty = false;
 		result.data = null;
 
-		for (int way = 0; way < m_ways; way++) {
-			if (tag == tag(way, set) && state(way, set) == cacheSlotState.VALID) {
-				result.victimFound = true;
-				result.victimAddress = (tag(way, set) * m_sets + set) * m_words * 4;
-				result.victimDirty = dirty(way, set);
-				if (result.victimDirty) {
-					result.data = new ArrayList<Long>();
-					for (int word = 0; word < m_words; word++) {
-						result.data.add(data(way, set, word));
-					}
-				}
-				if (full_inval) {
-					setState(way, set, cacheSlotState.EMPTY);
-					setLru(way, set, false);
-				}
-				setExclu(way, set, false);
-				setDirty(way, set, false);
-				return result;
+		int way = lookup(tag, set);
+		if (way != -1 && state(way, set) == cacheSlotState.VALID) {
+			result.victimFound = true;
+			result.victimAddress = (tag(way, set) * m_sets + set) * m_words * 4;
+			result.victimDirty = dirty(way, set);
+			if (result.victimDirty) {
+				result.data = copyLine(way, set);
+			}
+			if (full_inval) {
+				setState(way, set, cacheSlotState.EMPTY);
+				m_replacement.invalidate((int) set, way);
 			}
+			setExclu(way, set, false);
+			setDirty(way, set, false);
 		}
 		return result;
 	}
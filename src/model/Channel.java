@@ -1,10 +1,10 @@
 package model;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Vector;
+
+import utils.SplitRandom;
 
 /**
  * The problem addressed by this class is to route correctly requests and responses. Direct requests are routed by address,
@@ -16,14 +16,37 @@ import java.util.Vector;
  * the graphical representation.
  * 
  * A channel has a 1-to-N topology: requests are serialized when pushed back (different writers can share the same channel),
- * and then when the request delay has passed, requests are routed towards the good output "route". This routing is made via
- * two Maps:
- *  - m_tgtid2module in case of tgtid routing (resp. m_seg2module in case of address routing) whose keys are target_id found
- *    in the request (resp. segment containing the address of the request) and values the modules connected.
- *  - m_module2chanIdx whose keys are the modules and the values the channel index. These indexes are not know from the modules
- *    and are managed internally
- * Modules try to read from a channel by passing themselves as an argument; therefore, each module must register itself to the
- * channels associated to its input ports. This registration is made via the method AddTgtidTranslation (or AddAddrTranslation)
+ * and then when the request delay has passed, requests are routed towards the good output "route". Requests in transit are
+ * kept in a timing wheel indexed by their delivery cycle. By default, requests are delivered in the order in which they
+ * were pushed, a request waiting for the delivery of the previous ones of its traffic class; setInOrderDelivery(false) lets each request be
+ * delivered as soon as its delay has passed. This routing is made via
+ * m_tgtid2port in case of tgtid routing, an array indexed by the target_id found in the request giving the channel index
+ * (or port) of the module, or m_seg_index in case of address routing, a sorted index of the segments giving the port of an address.
+ * Each module must register itself to the channels associated to its input ports. This registration is made via the method
+ * addTgtidTranslation (or addAddrTranslation), which returns the port of the module; the module then passes this port
+ * to the methods reading the channel.
+ * When the channel is managed by an ActivityScheduler, the module reading an output port is woken up each time a request
+ * is routed to this port.
+ * The header fields of the requests held by the channel are stored in a MessageTable, and the queues of the channel
+ * (timing wheel, source and output lanes) only contain the int handles of the table; the Request objects are only read
+ * by the modules reading the output ports. The handle of a popped request is freed by the next call to simulate1Cycle(),
+ * since the ports can be popped in parallel. The queues are circular. A channel can be given a capacity: producers call canPush() or getCredits()
+ * before sending, and stall while the channel is full. The occupancy used is the one at the beginning of the cycle, so that
+ * the result does not depend on the order of evaluation of the modules; several producers may thus exceed the capacity
+ * during the same cycle. By default, channels are unbounded.
+ * By default, the bandwidth of a channel is not limited. With setBandwidth(), the channel models a link transferring a given
+ * number of flits per cycle: a request is made of a header flit and of the flits carrying its data words, and is only
+ * inserted in the timing wheel once all its flits are sent. Pushed requests wait in a queue per source, and an Arbiter
+ * chooses the source whose request uses the link next.
+ * The commands can be mapped to several traffic classes with setTrafficClass(); class 0 (the default class of all the
+ * commands) has the highest priority. Each output port and each source queue then has a lane (virtual channel) per class:
+ * the reader of a port gets the first request of the highest priority lane which is not empty, and the link is given to
+ * the requests of the highest priority class waiting. A stream of requests of a low priority class thus does not delay
+ * the requests of the other classes; the order of the requests is only kept within each class, so that commands whose
+ * order matters for the protocol must be in the same class.
+ * The channel keeps cheap statistics in a ChannelStats: message mix, occupancy histograms and delays.
+ * When the modules are simulated in parallel, the writes to the shared structures of the channel (pushed requests and
+ * notification of finished requests) are deferred to a ChannelWriteLog, and committed at the end of the cycle in the sequential order.
  * @author QLM
  */
 public class Channel {
@@ -33,14 +56,39 @@ public class Channel {
 	
 	private int m_cycle = 0;
 	
-	private Map<Long, Module> m_tgtid2module = null;
-	private Map<Segment, Module> m_seg2module = null;
+	private int [] m_tgtid2port = null;
+	private SegmentIndex m_seg_index = null;
 
-	private Map<Module, Integer> m_module2chanIdx = null;
+	private List<Module> m_chanIdx2module = null;
+	
+	private ActivityScheduler m_scheduler = null;
+	private boolean m_deferred_writes = false;
+	
+	private MessageTable m_table;
+	private TimingWheel m_reqs_in;
+	private boolean m_in_order = true;
+	private int [] m_last_delivery = new int[1]; // per class
+	private HandleQueue [][] m_reqs_out; // [port][class]
+	private HandleQueue [] m_popped; // per port, handles to free
+	private int m_capacity = 0;
+	private int m_occupancy = 0;
+	private List<RequestListener> m_listeners = new ArrayList<RequestListener>();
+	private SplitRandom m_random = new SplitRandom(ActivityScheduler.defaultSeed);
 	
-	private List<Request> m_reqs_in;
-	private Vector<List<Request>> m_reqs_out;
-	private List<Request> m_finished_reqs;
+	private int m_flits_per_cycle = 0;
+	private int m_words_per_flit = 1;
+	private Arbiter m_arbiter = new RoundRobinArbiter();
+	private int [] m_srcid2source = new int[0];
+	private List<HandleQueue []> m_sources = new ArrayList<HandleQueue []>(); // [class] for each source
+	private List<Request> m_heads = new ArrayList<Request>();
+	private int m_nb_waiting = 0;
+	private int [] m_nb_waiting_class;
+	
+	private int m_nb_classes = 1;
+	private int [] m_cmd2class = new int[Request.cmd_t.values().length];
+	private ChannelStats m_stats;
+	private int m_sending = -1;
+	private int m_sending_flits = 0;
 
 	/**
 	 * @param name : name of the channel
@@ -48,35 +96,106 @@ public class Channel {
 	 * @param addressRouting : if true, the selection of the output request list is made by address
 	 *                         if false, it is made by the tgtid
 	 */
-	public Channel(String name, int nbOutputs, boolean addressRouting, List<Request> finishedReq) {
-		m_reqs_in = new ArrayList<Request>();
-		m_reqs_out = new Vector<List<Request>>();
-		m_finished_reqs = finishedReq;
+	public Channel(String name, int nbOutputs, boolean addressRouting) {
+		m_table = new MessageTable();
+		m_reqs_in = new TimingWheel(m_table);
+		m_reqs_out = new HandleQueue[nbOutputs][1];
+		m_popped = new HandleQueue[nbOutputs];
 		m_name = name;
 		m_address_routing = addressRouting;
-		m_module2chanIdx = new HashMap<Module, Integer>();
+		m_chanIdx2module = new ArrayList<Module>();
 		if (m_address_routing) {
-			m_seg2module = new HashMap<Segment, Module>();
+			m_seg_index = SegmentIndex.empty;
 		}
 		else {
-			m_tgtid2module = new HashMap<Long, Module>();
+			m_tgtid2port = new int[0];
 		}
 		
 		for (int i = 0; i < nbOutputs; i++) {
-			m_reqs_out.add(new ArrayList<Request>());
+			m_reqs_out[i][0] = new HandleQueue();
+			m_popped[i] = new HandleQueue();
+		}
+		m_nb_waiting_class = new int[1];
+		m_stats = new ChannelStats(nbOutputs, 1);
+	}
+	
+	/**
+	 * Maps a command to a traffic class. Must be called before any request is pushed.
+	 * @param cmd : the command
+	 * @param cls : the class, 0 being the class of highest priority
+	 */
+	public void setTrafficClass(Request.cmd_t cmd, int cls) {
+		assert(cls >= 0 && nbInTransit() == 0);
+		m_cmd2class[cmd.ordinal()] = cls;
+		int nbClasses = 1;
+		for (int c : m_cmd2class) {
+			nbClasses = Math.max(nbClasses, c + 1);
+		}
+		if (nbClasses != m_nb_classes) {
+			m_nb_classes = nbClasses;
+			for (int i = 0; i < m_reqs_out.length; i++) {
+				m_reqs_out[i] = newLanes();
+			}
+			for (int i = 0; i < m_sources.size(); i++) {
+				m_sources.set(i, newLanes());
+			}
+			m_nb_waiting_class = new int[nbClasses];
+			m_last_delivery = Arrays.copyOf(m_last_delivery, nbClasses);
+			m_stats = new ChannelStats(m_reqs_out.length, nbClasses);
 		}
 	}
 	
+	private HandleQueue [] newLanes() {
+		HandleQueue [] lanes = new HandleQueue[m_nb_classes];
+		for (int c = 0; c < m_nb_classes; c++) {
+			lanes[c] = new HandleQueue();
+		}
+		return lanes;
+	}
+	
+	private int classOf(Request req) {
+		return m_cmd2class[req.getCmd().ordinal()];
+	}
+	
+	public int getNbClasses() {
+		return m_nb_classes;
+	}
+	
+	public ChannelStats getStats() {
+		return m_stats;
+	}
+	
+	/**
+	 * @return the current number of requests in transit and waiting in the output ports
+	 */
+	public int getOccupancy() {
+		return nbInTransit() + nbInOutputs();
+	}
+	
+	public String getName() {
+		return m_name;
+	}
+	
 	/**
 	 * Adds the translation between the Module m and the targetid specified
 	 * This method must be called only for channels routing by targetid
 	 * @param tgtid : target id or srcid of the module
 	 * @param m : The module
+	 * @return the port of the module, to pass to the methods reading the channel
 	 */
-	public void addTgtidTranslation(long tgtid, Module m) {
+	public int addTgtidTranslation(long tgtid, Module m) {
 		assert(!m_address_routing);
-		m_tgtid2module.put(tgtid, m);
-		m_module2chanIdx.put(m, m_module2chanIdx.size());
+		assert(tgtid >= 0 && tgtid < Integer.MAX_VALUE);
+		if (tgtid >= m_tgtid2port.length) {
+			int [] ports = new int[Math.max((int) tgtid + 1, 2 * m_tgtid2port.length)];
+			Arrays.fill(ports, -1);
+			System.arraycopy(m_tgtid2port, 0, ports, 0, m_tgtid2port.length);
+			m_tgtid2port = ports;
+		}
+		int port = m_chanIdx2module.size();
+		m_tgtid2port[(int) tgtid] = port;
+		m_chanIdx2module.add(m);
+		return port;
 	}
 	
 	/**
@@ -84,42 +203,288 @@ public class Channel {
 	 * This method must be called only for channels routing by address
 	 * @param tgtid : target id or srcid of the module
 	 * @param m : The module
+	 * @return the port of the module, to pass to the methods reading the channel
 	 */
-	public void addAddrTranslation(List<Segment> seglist, Module m) {
+	public int addAddrTranslation(List<Segment> seglist, Module m) {
 		assert(m_address_routing);
+		int port = m_chanIdx2module.size();
 		for (Segment seg : seglist) {
-			m_seg2module.put(seg, m);
+			m_seg_index = m_seg_index.add(seg, port);
 		}
-		m_module2chanIdx.put(m, m_module2chanIdx.size());
+		m_chanIdx2module.add(m);
+		return port;
+	}
+	
+	
+	/**
+	 * Sets the scheduler to notify when a request is routed to an output port
+	 * @param scheduler
+	 */
+	void setScheduler(ActivityScheduler scheduler) {
+		m_scheduler = scheduler;
+	}
+	
+	
+	/**
+	 * @param deferred : if true, writes made while a ChannelWriteLog is installed on the current thread
+	 *                   are recorded in this log instead of being applied
+	 */
+	void setDeferredWrites(boolean deferred) {
+		m_deferred_writes = deferred;
 	}
 	
 
 	public void simulate1Cycle() {
-		for (Request req : m_reqs_in) {
-			req.simulate1Cycle();
-		}
-
-		while (!m_reqs_in.isEmpty() && m_reqs_in.get(0).toPop()) {
-			if (m_address_routing) {
-				int idx = -1;
-				for (Segment seg : m_seg2module.keySet()) {
-					if (seg.contains(m_reqs_in.get(0).getAddress())) {
-						Module m = m_seg2module.get(seg);
-						idx = m_module2chanIdx.get(m);
-						break;
-					}
+		freePopped();
+		if (m_flits_per_cycle > 0) {
+			transmit();
+		}
+		int msg;
+		while ((msg = m_reqs_in.poll(m_cycle)) != -1) {
+			deliver(msg);
+		}
+		m_cycle++;
+		updateOccupancy();
+		m_stats.occupancy(nbInTransit(), nbInOutputs(), 1);
+	}
+	
+	
+	/**
+	 * @return the number of requests waiting in the output ports
+	 */
+	int nbInOutputs() {
+		int res = 0;
+		for (HandleQueue [] lanes : m_reqs_out) {
+			for (HandleQueue q : lanes) {
+				res += q.size();
+			}
+		}
+		return res;
+	}
+	
+	
+	/**
+	 * Frees the handles of the requests popped since the previous cycle
+	 */
+	private void freePopped() {
+		for (HandleQueue q : m_popped) {
+			while (!q.isEmpty()) {
+				m_table.remove(q.get(0));
+				q.removeFirst();
+			}
+		}
+	}
+	
+	
+	MessageTable getTable() {
+		return m_table;
+	}
+	
+	
+	/**
+	 * Adds a pushed request to the message table of the channel
+	 * @param latency : number of cycles the request spends in the channel
+	 * @return the handle of the request
+	 */
+	int addMessage(Request req, int latency) {
+		req.r_push_cycle = m_cycle;
+		m_stats.pushed(req);
+		return m_table.add(req, classOf(req), latency, m_cycle);
+	}
+	
+	
+	/**
+	 * Routes a message to its output port, and wakes up the module reading this port
+	 */
+	void deliver(int msg) {
+		int idx = -1;
+		if (m_address_routing) {
+			idx = m_seg_index.portOf(m_table.address(msg));
+			assert(idx != -1);
+		}
+		else {
+			idx = m_tgtid2port[m_table.tgtid(msg)];
+			assert(idx != -1);
+		}
+		m_table.request(msg).r_ready_cycle = m_table.deliveryCycle(msg) + 1;
+		m_reqs_out[idx][m_table.cls(msg)].add(msg);
+		if (m_scheduler != null) {
+			m_scheduler.wake(m_chanIdx2module.get(idx));
+		}
+	}
+	
+	
+	int getCycle() {
+		return m_cycle;
+	}
+	
+	
+	/**
+	 * Limits the bandwidth of the channel
+	 * @param flitsPerCycle : number of flits sent per cycle, or 0 for an unlimited bandwidth
+	 * @param wordsPerFlit : number of data words carried by a flit
+	 */
+	public void setBandwidth(int flitsPerCycle, int wordsPerFlit) {
+		assert(flitsPerCycle >= 0 && wordsPerFlit > 0);
+		assert(m_nb_waiting == 0 && m_sending == -1);
+		m_flits_per_cycle = flitsPerCycle;
+		m_words_per_flit = wordsPerFlit;
+	}
+	
+	
+	/**
+	 * Sets the arbiter used when the bandwidth is limited (default: round-robin)
+	 */
+	public void setArbiter(Arbiter arbiter) {
+		m_arbiter = arbiter;
+	}
+	
+	
+	/**
+	 * @return the number of flits of the message: a header flit and the flits of the data words
+	 */
+	private int nbFlits(int msg) {
+		return 1 + (m_table.nwords(msg) + m_words_per_flit - 1) / m_words_per_flit;
+	}
+	
+	
+	private HandleQueue [] sourceLanes(int srcid) {
+		if (srcid >= m_srcid2source.length) {
+			int [] sources = new int[Math.max(srcid + 1, 2 * m_srcid2source.length)];
+			Arrays.fill(sources, -1);
+			System.arraycopy(m_srcid2source, 0, sources, 0, m_srcid2source.length);
+			m_srcid2source = sources;
+		}
+		if (m_srcid2source[srcid] == -1) {
+			m_srcid2source[srcid] = m_sources.size();
+			m_sources.add(newLanes());
+			m_heads.add(null);
+		}
+		return m_sources.get(m_srcid2source[srcid]);
+	}
+	
+	
+	/**
+	 * Sends the flits of the current cycle on the link: the request being sent is continued,
+	 * then new requests are granted by the arbiter until the flits of the cycle are used.
+	 */
+	private void transmit() {
+		int budget = m_flits_per_cycle;
+		while (budget > 0) {
+			if (m_sending == -1) {
+				if (m_nb_waiting == 0) {
+					return;
 				}
-				assert(idx != -1);
-				m_reqs_out.get(idx).add(m_reqs_in.get(0));
+				int cls = 0;
+				while (m_nb_waiting_class[cls] == 0) {
+					cls++;
+				}
+				for (int i = 0; i < m_sources.size(); i++) {
+					HandleQueue q = m_sources.get(i)[cls];
+					m_heads.set(i, q.isEmpty() ? null : m_table.request(q.get(0)));
+				}
+				int src = m_arbiter.grant(m_heads);
+				m_sending = m_sources.get(src)[cls].get(0);
+				m_sources.get(src)[cls].removeFirst();
+				m_nb_waiting--;
+				m_nb_waiting_class[cls]--;
+				m_sending_flits = nbFlits(m_sending);
 			}
-			else {
-				Module m = m_tgtid2module.get((long) m_reqs_in.get(0).getTgtid());
-				int idx = m_module2chanIdx.get(m);
-				m_reqs_out.get(idx).add(m_reqs_in.get(0));
+			int flits = Math.min(budget, m_sending_flits);
+			budget -= flits;
+			m_sending_flits -= flits;
+			if (m_sending_flits == 0) {
+				send(m_sending);
+				m_sending = -1;
 			}
-			m_reqs_in.remove(0);
 		}
-		m_cycle++;
+	}
+	
+	
+	/**
+	 * @param random : the generator from which the latencies of the requests are drawn, when they are pushed
+	 *                 (in parallel mode, when the pushes are committed)
+	 */
+	void setRandom(SplitRandom random) {
+		m_random = random;
+	}
+	
+	
+	/**
+	 * @param inOrder : if true (default), requests of a traffic class are delivered in the order in which they were pushed;
+	 *                  otherwise, each request is delivered when its own delay has passed
+	 */
+	public void setInOrderDelivery(boolean inOrder) {
+		m_in_order = inOrder;
+	}
+	
+	
+	/**
+	 * Sets the maximum number of requests in the channel, either in transit or waiting at an output port.
+	 * @param capacity : the capacity, or 0 for an unbounded channel
+	 */
+	public void setCapacity(int capacity) {
+		m_capacity = capacity;
+		updateOccupancy();
+	}
+	
+	
+	void updateOccupancy() {
+		if (m_capacity > 0) {
+			m_occupancy = nbInTransit() + nbInOutputs();
+		}
+	}
+	
+	
+	/**
+	 * @return the number of requests pushed and not yet routed to an output port
+	 */
+	int nbInTransit() {
+		return m_reqs_in.size() + m_nb_waiting + (m_sending == -1 ? 0 : 1);
+	}
+	
+	
+	/**
+	 * @return the number of requests which can be pushed in the current cycle
+	 *         according to the occupancy of the channel at the beginning of the cycle
+	 */
+	public int getCredits() {
+		if (m_capacity == 0) {
+			return Integer.MAX_VALUE;
+		}
+		return Math.max(0, m_capacity - m_occupancy);
+	}
+	
+	
+	/**
+	 * @return true if nbReqs requests can be pushed in the current cycle
+	 */
+	public boolean canPush(int nbReqs) {
+		return getCredits() >= nbReqs;
+	}
+
+	/**
+	 * @return the number of calls to simulate1Cycle() after which the first request of the channel
+	 *         will be routed to its output port, or -1 if the channel contains no request
+	 */
+	public int nextPopDelay() {
+		if (m_nb_waiting > 0 || m_sending != -1) {
+			return 1;
+		}
+		if (m_reqs_in.isEmpty()) {
+			return -1;
+		}
+		return m_reqs_in.nextDeliveryCycle(m_cycle) - m_cycle + 1;
+	}
+
+	/**
+	 * Advances the channel by several cycles during which no request can be popped.
+	 * Must be called with nbCycles strictly lower than nextPopDelay().
+	 * @param nbCycles number of cycles to skip
+	 */
+	public void skipCycles(int nbCycles) {
+		m_stats.occupancy(nbInTransit(), nbInOutputs(), nbCycles);
+		m_cycle += nbCycles;
 	}
 
 	/**
@@ -132,7 +497,43 @@ public class Channel {
 		if (m_address_routing) {
 			updateTgtid(req);
 		}
-		m_reqs_in.add(req);
+		if (m_deferred_writes) {
+			ChannelWriteLog log = ChannelWriteLog.current();
+			if (log != null) {
+				log.push(this, req);
+				return;
+			}
+		}
+		commitPushBack(req);
+	}
+	
+	
+	void commitPushBack(Request req) {
+		int msg = addMessage(req, m_random.nextInt(req.getMaxLatency() + 1));
+		if (m_flits_per_cycle > 0) {
+			int cls = m_table.cls(msg);
+			sourceLanes(m_table.srcid(msg))[cls].add(msg);
+			m_nb_waiting++;
+			m_nb_waiting_class[cls]++;
+		}
+		else {
+			send(msg);
+		}
+	}
+	
+	
+	/**
+	 * Inserts a message in the timing wheel. A message sent during the cycle c with a latency l
+	 * is delivered at the end of the cycle c + max(0, l - 1).
+	 */
+	private void send(int msg) {
+		int delivery = m_cycle + Math.max(0, m_table.latency(msg) - 1);
+		if (m_in_order) {
+			int cls = m_table.cls(msg);
+			delivery = Math.max(delivery, m_last_delivery[cls]);
+			m_last_delivery[cls] = delivery;
+		}
+		m_reqs_in.add(msg, m_cycle, delivery);
 	}
 
 	
@@ -143,67 +544,121 @@ public class Channel {
 	 */
 	private void updateTgtid(Request req) {
 		assert(req.getTgtid() == -1);
-		int tgtid = -1;
-		for (Segment seg : m_seg2module.keySet()) {
-			if (seg.contains(req.getAddress())) {
-				tgtid = seg.getTgtid();
-				break;
-			}
-		}
-		req.updateTgtid(tgtid);
+		Segment seg = m_seg_index.segmentOf(req.getAddress());
+		req.updateTgtid(seg == null ? -1 : seg.getTgtid());
 	}
 	
 	
 	/**
-	 * Pops the first request of the output port connected to the module m
-	 * @param m
+	 * Pops the first request of an output port
+	 * @param numOutput : port returned by the registration of the reader module
 	 */
-	void popFront(Module m) {
-		int numOutput = m_module2chanIdx.get(m);
-		Request req = m_reqs_out.get(numOutput).get(0);
+	void popFront(int numOutput) {
+		int cls = firstLane(numOutput);
+		int msg = m_reqs_out[numOutput][cls].get(0);
+		Request req = m_table.request(msg);
 		if (!req.addedToFinishedReqs) {
 			req.addToFinishedReqs(m_cycle);
-			m_finished_reqs.add(req);
+			addFinished(req);
+		}
+		m_stats.popped(numOutput, cls, m_table.pushCycle(msg), m_table.deliveryCycle(msg), m_cycle);
+		m_reqs_out[numOutput][cls].removeFirst();
+		m_popped[numOutput].add(msg);
+	}
+	
+	
+	/**
+	 * @return the lane of highest priority of the output port which is not empty, or -1
+	 */
+	private int firstLane(int numOutput) {
+		HandleQueue [] lanes = m_reqs_out[numOutput];
+		for (int c = 0; c < lanes.length; c++) {
+			if (!lanes[c].isEmpty()) {
+				return c;
+			}
 		}
-		m_reqs_out.get(numOutput).remove(0);
+		return -1;
 	}
 	
 
 	/**
-	 * @param m the Reader Module
-	 * @return the first Request in the output port connected to the module m
+	 * @param numOutput : port returned by the registration of the reader module
+	 * @return the first Request in the output port
 	 */
-	Request front(Module m) {
-		int numOutput = m_module2chanIdx.get(m);
-		return m_reqs_out.get(numOutput).get(0);
+	Request front(int numOutput) {
+		return m_table.request(m_reqs_out[numOutput][firstLane(numOutput)].get(0));
 	}
 
 	
 	/**
-	 * @param m 
-	 * @return true if the output port connected to m contains at least a request, false otherwise
+	 * @param numOutput : port returned by the registration of the reader module
+	 * @return true if the output port contains no request, false otherwise
 	 */
-	boolean empty(Module m) {
-		int numOutput = m_module2chanIdx.get(m);
-		return m_reqs_out.get(numOutput).isEmpty();
+	boolean empty(int numOutput) {
+		return firstLane(numOutput) == -1;
 	}
 	
 	
-	public void addToFinishedReqs(Module m) {
-		int numOutput = m_module2chanIdx.get(m);
-		Request req = m_reqs_out.get(numOutput).get(0);
+	public void addToFinishedReqs(int numOutput) {
+		Request req = front(numOutput);
 		if (!req.addedToFinishedReqs) {
 			req.addToFinishedReqs(m_cycle);
-			m_finished_reqs.add(req);
+			addFinished(req);
+		}
+	}
+
+	private void addFinished(Request req) {
+		if (m_deferred_writes) {
+			ChannelWriteLog log = ChannelWriteLog.current();
+			if (log != null) {
+				req.r_notify_pending = true;
+				log.finish(this, req);
+				return;
+			}
+		}
+		commitFinished(req);
+	}
+	
+	
+	void commitFinished(Request req) {
+		for (int i = 0; i < m_listeners.size(); i++) {
+			m_listeners.get(i).requestFinished(req);
+		}
+		if (req.r_notify_pending) {
+			// the consumer may have released the request before the notification
+			req.r_notify_pending = false;
+			if (req.r_release_pending) {
+				req.r_release_pending = false;
+				req.release();
+			}
 		}
 	}
+	
+	/**
+	 * Registers a listener notified of each request consumed in the channel
+	 */
+	public void addListener(RequestListener l) {
+		m_listeners.add(l);
+	}
+	
+	public void removeListener(RequestListener l) {
+		m_listeners.remove(l);
+	}
 
 	public String toString() {
 		String res;
 		res = "Contenu du channel " + m_name + ":\n";
-		for (Request req : m_reqs_in) {
-			res += req;
+		for (HandleQueue [] lanes : m_sources) {
+			for (HandleQueue q : lanes) {
+				for (int i = 0; i < q.size(); i++) {
+					res += m_table.request(q.get(i));
+				}
+			}
+		}
+		if (m_sending != -1) {
+			res += m_table.request(m_sending);
 		}
+		res += m_reqs_in.toString(m_cycle);
 		return res;
 	}
 
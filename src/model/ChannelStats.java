@@ -0,0 +1,219 @@
+package model;
+
+import model.Request.cmd_t;
+import utils.Histogram;
+
+/**
+ * Statistics of a channel:
+ *  - the number of messages and of data words pushed, per command
+ *  - the histograms of the occupancy of the channel at the end of each cycle, for the requests in transit
+ *    (pushed and not yet routed to an output port) and for the requests waiting in the output ports
+ *  - the histogram of the delay of the requests, from their push to their pop
+ *  - for each traffic class, the number of requests popped and their transit and output wait times.
+ * 
+ * The transit time of a request goes from the cycle of its push to the cycle at which it can be read at its
+ * output port, and its output wait from this cycle to the cycle at which it is popped; the output wait measures
+ * the time spent behind other requests of the port (head-of-line blocking) or waiting for the reader.
+ * Pushes and occupancies are recorded while the channels are simulated sequentially. The counters updated on pops
+ * are kept per output port, because the modules reading different ports can be simulated in parallel.
+ * @author QLM
+ *
+ */
+public class ChannelStats {
+
+	private int m_nb_classes;
+	private long [][] m_nb_reqs; // [port][class]
+	private long [][] m_transit;
+	private long [][] m_output_wait;
+	private int [][] m_max_output_wait;
+
+	private long [] m_nb_msgs = new long[cmd_t.values().length];
+	private long [] m_nb_words = new long[cmd_t.values().length];
+	private Histogram m_in_occupancy = new Histogram();
+	private Histogram m_out_occupancy = new Histogram();
+	private Histogram [] m_delay; // per port
+
+	ChannelStats(int nbPorts, int nbClasses) {
+		m_nb_classes = nbClasses;
+		m_nb_reqs = new long[nbPorts][nbClasses];
+		m_transit = new long[nbPorts][nbClasses];
+		m_output_wait = new long[nbPorts][nbClasses];
+		m_max_output_wait = new int[nbPorts][nbClasses];
+		m_delay = new Histogram[nbPorts];
+		for (int i = 0; i < nbPorts; i++) {
+			m_delay[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * Records a request pushed in the channel
+	 */
+	void pushed(Request req) {
+		m_nb_msgs[req.getCmd().ordinal()]++;
+		m_nb_words[req.getCmd().ordinal()] += req.getNwords();
+	}
+
+	/**
+	 * Records the occupancy of the channel during nbCycles cycles
+	 */
+	void occupancy(int inTransit, int inOutputs, int nbCycles) {
+		m_in_occupancy.add(inTransit, nbCycles);
+		m_out_occupancy.add(inOutputs, nbCycles);
+	}
+
+	/**
+	 * Records a request popped from the lane cls of the output port during the cycle
+	 * @param pushCycle : cycle at which the request was pushed
+	 * @param deliveryCycle : cycle at the end of which the request was routed to the output port
+	 */
+	void popped(int port, int cls, int pushCycle, int deliveryCycle, int cycle) {
+		int ready = deliveryCycle + 1;
+		int wait = cycle - ready;
+		m_nb_reqs[port][cls]++;
+		m_transit[port][cls] += ready - pushCycle;
+		m_output_wait[port][cls] += wait;
+		if (wait > m_max_output_wait[port][cls]) {
+			m_max_output_wait[port][cls] = wait;
+		}
+		m_delay[port].add(cycle - pushCycle);
+	}
+
+	public long getNbMessages(cmd_t cmd) {
+		return m_nb_msgs[cmd.ordinal()];
+	}
+
+	public long getNbWords(cmd_t cmd) {
+		return m_nb_words[cmd.ordinal()];
+	}
+
+	public long getNbMessages() {
+		long res = 0;
+		for (long n : m_nb_msgs) {
+			res += n;
+		}
+		return res;
+	}
+
+	public long getNbWords() {
+		long res = 0;
+		for (long n : m_nb_words) {
+			res += n;
+		}
+		return res;
+	}
+
+	/**
+	 * @return the histogram of the number of requests in transit at the end of each cycle
+	 */
+	public Histogram getInTransitOccupancy() {
+		return m_in_occupancy;
+	}
+
+	/**
+	 * @return the histogram of the number of requests in the output ports at the end of each cycle
+	 */
+	public Histogram getOutputOccupancy() {
+		return m_out_occupancy;
+	}
+
+	/**
+	 * @return the histogram of the number of cycles between the push and the pop of the requests
+	 */
+	public Histogram getDelay() {
+		Histogram res = new Histogram();
+		for (Histogram h : m_delay) {
+			res.addAll(h);
+		}
+		return res;
+	}
+
+	public int getNbClasses() {
+		return m_nb_classes;
+	}
+
+	public long getNbRequests(int cls) {
+		long res = 0;
+		for (long [] n : m_nb_reqs) {
+			res += n[cls];
+		}
+		return res;
+	}
+
+	/**
+	 * @return the average number of cycles between the push of the requests of the class and their arrival at the output port
+	 */
+	public double getAvgTransit(int cls) {
+		return average(m_transit, cls);
+	}
+
+	/**
+	 * @return the average number of cycles spent by the requests of the class in the output port
+	 */
+	public double getAvgOutputWait(int cls) {
+		return average(m_output_wait, cls);
+	}
+
+	public int getMaxOutputWait(int cls) {
+		int res = 0;
+		for (int [] m : m_max_output_wait) {
+			res = Math.max(res, m[cls]);
+		}
+		return res;
+	}
+
+	private double average(long [][] sums, int cls) {
+		long nb = getNbRequests(cls);
+		if (nb == 0) {
+			return 0;
+		}
+		long sum = 0;
+		for (long [] s : sums) {
+			sum += s[cls];
+		}
+		return (double) sum / nb;
+	}
+
+	/**
+	 * @return a one-line summary: messages, words, mean and maximum occupancies, mean, 90th percentile bound and
+	 *         maximum delays
+	 */
+	public String summary() {
+		Histogram delay = getDelay();
+		return String.format("%10d %10d %8.2f %6d %8.2f %6d %8.2f %6d %6d", getNbMessages(), getNbWords(),
+				m_in_occupancy.getMean(), m_in_occupancy.getMax(), m_out_occupancy.getMean(), m_out_occupancy.getMax(),
+				delay.getMean(), delay.quantileBound(0.9), delay.getMax());
+	}
+
+	public static String summaryHeader() {
+		return String.format("%10s %10s %8s %6s %8s %6s %8s %6s %6s", "messages", "words", "avg in", "max", "avg out",
+				"max", "avg dly", "p90<", "max");
+	}
+
+	/**
+	 * @return the messages and words per command, and the histograms
+	 */
+	public String details() {
+		String res = "";
+		for (cmd_t cmd : cmd_t.values()) {
+			if (m_nb_msgs[cmd.ordinal()] != 0) {
+				res += String.format("%-20s %10d msgs %10d words\n", cmd, m_nb_msgs[cmd.ordinal()], m_nb_words[cmd.ordinal()]);
+			}
+		}
+		res += "in transit: " + m_in_occupancy + "\n";
+		res += "in outputs: " + m_out_occupancy + "\n";
+		res += "delay:      " + getDelay() + "\n";
+		return res;
+	}
+
+	/**
+	 * @return the statistics per traffic class
+	 */
+	public String toString() {
+		String res = String.format("%6s %10s %12s %12s %10s\n", "class", "requests", "avg transit", "avg wait", "max wait");
+		for (int c = 0; c < m_nb_classes; c++) {
+			res += String.format("%6d %10d %12.2f %12.2f %10d\n", c, getNbRequests(c), getAvgTransit(c),
+					getAvgOutputWait(c), getMaxOutputWait(c));
+		}
+		return res;
+	}
+}
@@ -0,0 +1,96 @@
+package model;
+
+/**
+ * Log of the channel writes made by a module during a cycle, used when modules are simulated in parallel.
+ * While a log is installed on the current thread (between begin() and end()), channels configured for
+ * deferred writes do not modify their shared structures: requests pushed and requests added to the
+ * finished list are recorded in the log instead. The logs of all the modules are then committed at
+ * the end of the evaluation phase, in the order in which the modules would have been simulated
+ * sequentially, so that the content of the channels is the same as with a sequential simulation.
+ * @author QLM
+ *
+ */
+class ChannelWriteLog {
+
+	private static final ThreadLocal<ChannelWriteLog> current = new ThreadLocal<ChannelWriteLog>();
+
+	private static final byte PUSH = 0;
+	private static final byte FINISH = 1;
+
+	private byte [] m_kinds;
+	private Channel [] m_channels;
+	private Request [] m_reqs;
+	private int m_size;
+
+	ChannelWriteLog() {
+		m_kinds = new byte[4];
+		m_channels = new Channel[4];
+		m_reqs = new Request[4];
+		m_size = 0;
+	}
+
+	/**
+	 * @return the log installed on the current thread, or null if writes must not be deferred
+	 */
+	static ChannelWriteLog current() {
+		return current.get();
+	}
+
+	/**
+	 * Installs this log on the current thread
+	 */
+	void begin() {
+		current.set(this);
+	}
+
+	/**
+	 * Removes this log from the current thread
+	 */
+	void end() {
+		current.remove();
+	}
+
+	private void add(byte kind, Channel c, Request req) {
+		if (m_size == m_kinds.length) {
+			byte [] kinds = new byte[2 * m_size];
+			Channel [] channels = new Channel[2 * m_size];
+			Request [] reqs = new Request[2 * m_size];
+			System.arraycopy(m_kinds, 0, kinds, 0, m_size);
+			System.arraycopy(m_channels, 0, channels, 0, m_size);
+			System.arraycopy(m_reqs, 0, reqs, 0, m_size);
+			m_kinds = kinds;
+			m_channels = channels;
+			m_reqs = reqs;
+		}
+		m_kinds[m_size] = kind;
+		m_channels[m_size] = c;
+		m_reqs[m_size] = req;
+		m_size++;
+	}
+
+	void push(Channel c, Request req) {
+		add(PUSH, c, req);
+	}
+
+	void finish(Channel c, Request req) {
+		add(FINISH, c, req);
+	}
+
+	/**
+	 * Applies the logged writes to the channels, in the order in which they were made, and empties the log.
+	 * Must be called from a single thread.
+	 */
+	void commit() {
+		for (int i = 0; i < m_size; i++) {
+			if (m_kinds[i] == PUSH) {
+				m_channels[i].commitPushBack(m_reqs[i]);
+			}
+			else {
+				m_channels[i].commitFinished(m_reqs[i]);
+			}
+			m_channels[i] = null;
+			m_reqs[i] = null;
+		}
+		m_size = 0;
+	}
+}
@@ -3,72 +3,115 @@ package model;
 /**
  * Implementation an explicit list of copies.
  * Only made to look more real than using a hashset...
+ * The copies are stored as a bit vector of 64-bit words, indexed by the srcid of the caches,
+ * which grows on demand; empty lists do not allocate any word. Sharers are found with
+ * trailing-zero scans, so that iterating over the copies costs time proportional
+ * to the number of copies rather than to the number of caches.
  * @author QLM
  */
 public class CopiesList {
 	
-	private int laListe;
+	private static final long [] noWords = new long[0];
+	
+	private long [] laListe;
+	private int m_nb_copies;
 	
 	public CopiesList() {
-		laListe = 0;
+		laListe = noWords;
+		m_nb_copies = 0;
 	}
 	
 	public CopiesList(CopiesList cl) {
-		this.laListe = cl.laListe;
+		this.laListe = cl.m_nb_copies == 0 ? noWords : cl.laListe.clone();
+		this.m_nb_copies = cl.m_nb_copies;
 	}
 
 	void add(int cache_id) {
-
-		assert (cache_id < 32);
-		laListe = laListe | (1 << cache_id);
+		assert (cache_id >= 0);
+		int w = cache_id >>> 6;
+		if (w >= laListe.length) {
+			long [] words = new long[Math.max(w + 1, 2 * laListe.length)];
+			System.arraycopy(laListe, 0, words, 0, laListe.length);
+			laListe = words;
+		}
+		long bit = 1L << cache_id;
+		if ((laListe[w] & bit) == 0) {
+			laListe[w] |= bit;
+			m_nb_copies++;
+		}
 	}
 
 	boolean hasOtherCopy(int cache_id) {
-		for (int i = 0; i < 32; i++) {
-			if ((laListe & (1 << i)) != 0 && i != cache_id) {
-				return true;
-			}
-		}
-		return false;
+		return m_nb_copies > (hasCopy(cache_id) ? 1 : 0);
 	}
 
 	void remove(int cache_id) {
-		assert (cache_id < 32);
-		laListe = laListe & (~(1 << cache_id));
+		assert (cache_id >= 0);
+		int w = cache_id >>> 6;
+		if (w < laListe.length) {
+			long bit = 1L << cache_id;
+			if ((laListe[w] & bit) != 0) {
+				laListe[w] &= ~bit;
+				m_nb_copies--;
+			}
+		}
 	}
 
 	void removeAll() {
-		laListe = 0;
+		for (int w = 0; w < laListe.length; w++) {
+			laListe[w] = 0;
+		}
+		m_nb_copies = 0;
 	}
 
 	int getNextOwner() {
-		for (int i = 0; i < 32; i++) {
-			if ((laListe & (1 << i)) != 0) {
-				return i;
+		return nextOwner(0);
+	}
+
+	/**
+	 * @return the smallest cache id greater than or equal to from having a copy, or -1 if there is none
+	 */
+	int nextOwner(int from) {
+		if (m_nb_copies == 0) {
+			return -1;
+		}
+		int w = from >>> 6;
+		if (w >= laListe.length) {
+			return -1;
+		}
+		long word = laListe[w] & (-1L << from);
+		while (word == 0) {
+			w++;
+			if (w == laListe.length) {
+				return -1;
 			}
+			word = laListe[w];
 		}
-		return -1;
+		return (w << 6) + Long.numberOfTrailingZeros(word);
 	}
 
 	int nbCopies() {
-		int i;
-		int res = 0;
-		long l = laListe;
-		for (i = 0; i < 32; i++) {
-			if ((l & 1) != 0) {
-				res++;
-			}
-			l = l >> 1;
-		}
-		return res;
+		return m_nb_copies;
 	}
 
 	boolean hasCopy(int id) {
-		return (laListe & (1 << id)) != 0;
+		int w = id >>> 6;
+		return w < laListe.length && (laListe[w] & (1L << id)) != 0;
 	}
 	
 	public String toString() {
-		String res = "0x" + Integer.toHexString(laListe);
+		int w = laListe.length - 1;
+		while (w > 0 && laListe[w] == 0) {
+			w--;
+		}
+		if (w < 0) {
+			return "0x0";
+		}
+		String res = "0x" + Long.toHexString(laListe[w]);
+		for (w--; w >= 0; w--) {
+			String word = Long.toHexString(laListe[w]);
+			res += "0000000000000000".substring(word.length()) + word;
+		}
 		return res;
 	}
 
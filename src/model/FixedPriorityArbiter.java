@@ -0,0 +1,23 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Grants the source with the lowest srcid.
+ * @author QLM
+ *
+ */
+public class FixedPriorityArbiter implements Arbiter {
+
+	public int grant(List<Request> heads) {
+		int res = -1;
+		for (int i = 0; i < heads.size(); i++) {
+			Request req = heads.get(i);
+			if (req != null && (res == -1 || req.getSrcid() < heads.get(res).getSrcid())) {
+				res = i;
+			}
+		}
+		assert (res != -1);
+		return res;
+	}
+}
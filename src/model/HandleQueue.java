@@ -0,0 +1,58 @@
+package model;
+
+/**
+ * FIFO of message handles (see MessageTable) stored in a circular array, which doubles its size when full.
+ * All the operations are in constant (amortized) time.
+ * @author QLM
+ *
+ */
+class HandleQueue {
+
+	private int [] m_msgs;
+	private int m_head;
+	private int m_size;
+
+	HandleQueue() {
+		m_msgs = new int[8];
+		m_head = 0;
+		m_size = 0;
+	}
+
+	int size() {
+		return m_size;
+	}
+
+	boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	/**
+	 * @return the i-th handle from the front of the queue
+	 */
+	int get(int i) {
+		assert (i < m_size);
+		return m_msgs[(m_head + i) & (m_msgs.length - 1)];
+	}
+
+	void add(int msg) {
+		if (m_size == m_msgs.length) {
+			int [] msgs = new int[2 * m_msgs.length];
+			for (int i = 0; i < m_size; i++) {
+				msgs[i] = get(i);
+			}
+			m_msgs = msgs;
+			m_head = 0;
+		}
+		m_msgs[(m_head + m_size) & (m_msgs.length - 1)] = msg;
+		m_size++;
+	}
+
+	/**
+	 * Removes the handle at the front of the queue
+	 */
+	void removeFirst() {
+		assert (m_size > 0);
+		m_head = (m_head + 1) & (m_msgs.length - 1);
+		m_size--;
+	}
+}
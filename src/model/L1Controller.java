@@ -1,4 +1,10 @@
 package model;
 
 
-public interface L1Controller extends Module {}
+public interface L1Controller extends Module {
+
+	/**
+	 * Sets the replacement policy of the L1 cache, whose replacement state is reset.
+	 */
+	public void setReplacementPolicy(ReplacementPolicy policy);
+}
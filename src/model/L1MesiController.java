@@ -1,9 +1,9 @@
 package model;
 
 import java.lang.Thread.State;
-import java.util.ArrayList;
-import java.util.List;
 
+import utils.Trace;
+import utils.Tracer;
 import utils.Utile;
 
 import model.LineState.cacheSlotState;
@@ -47,7 +47,7 @@ public class L1MesiController implements L1Controller {
 	 private boolean r_ignore_rsp; // ignore next response when receiving it
 	 private cmd_t r_cmd_req;
 	 private long r_wb_addr; // write-back address
-	 private List<Long> r_wb_buf; // write-back buffer
+	 private long [] r_wb_buf; // write-back buffer
 	 private boolean r_rsp_miss_ok; // response to the miss has been received (set by "rsp_fsm")
 	 private boolean r_current_wb; // true if a write-back is currently being done; there can be only one at a time
 
@@ -62,16 +62,21 @@ public class L1MesiController implements L1Controller {
 
 	 private String m_name;
 
+	 private Tracer m_tracer;
+
 	 private CacheL1 m_cache_l1;
 
 	 /**
 	  * Channels
 	  */
 	 private Channel p_in_req; // incoming coherence requests from ram
+	 private int p_in_req_port;
 	 private Channel p_out_rsp; // outgoing coherence responses to ram
 	 private Channel p_out_req; // outgoing direct requests to ram
 	 private Channel p_in_rsp; // incoming direct responses from ram
+	 private int p_in_rsp_port;
 	 private Channel p_in_iss_req; // incoming processor requests
+	 private int p_in_iss_req_port;
 	 private Channel p_out_iss_rsp; // outgoing processor responses
 
 	 private FsmState r_fsm_state;
@@ -89,12 +94,23 @@ public class L1MesiController implements L1Controller {
 	  * Last processor request received from the ram, written by method getIssRequest()
 	  */
 	 private Request m_iss_req;
+	 /**
+	  * Word read by the cache on a processor read hit
+	  */
+	 private long [] m_read_buf = new long[1];
 
 
 	 private long align(long addr) {
 		 return (addr & ~((1 << (2 + Utile.log2(m_words))) - 1));
 	 }
 
+	 /**
+	  * @return the index in its line of the word at address addr
+	  */
+	 private int wordIndex(long addr) {
+		 return (int) ((addr >>> 2) & (m_words - 1));
+	 }
+
 
 	 public L1MesiController(String name, int procid, int nways, int nsets, int nwords, Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem,
 			 Channel rsp_to_mem, Channel req_from_iss, Channel rsp_to_iss) {
@@ -102,6 +118,7 @@ public class L1MesiController implements L1Controller {
 		 r_srcid = l1StartId + procid;
 		 m_words = nwords;
 		 m_name = name;
+		 m_tracer = Trace.getTracer(name);
 		 m_cycle = 0;
 		 p_in_req = req_from_mem;
 		 p_out_rsp = rsp_to_mem;
@@ -110,9 +127,9 @@ public class L1MesiController implements L1Controller {
 		 p_in_iss_req = req_from_iss;
 		 p_out_iss_rsp = rsp_to_iss;
 		 m_cache_l1 = new CacheL1("CacheL1", procid, nways, nsets, nwords);
-		 p_in_req.addTgtidTranslation(r_srcid, this); // Associate the component to its srcid for the channel
-		 p_in_rsp.addTgtidTranslation(r_srcid, this);
-		 p_in_iss_req.addTgtidTranslation(r_srcid, this); // the channel index is 0 since the processor is connected to a single L1
+		 p_in_req_port = p_in_req.addTgtidTranslation(r_srcid, this); // Associate the component to its srcid for the channel
+		 p_in_rsp_port = p_in_rsp.addTgtidTranslation(r_srcid, this);
+		 p_in_iss_req_port = p_in_iss_req.addTgtidTranslation(r_srcid, this); // the channel index is 0 since the processor is connected to a single L1
 		 reset();
 	 }
 
@@ -133,16 +150,16 @@ public class L1MesiController implements L1Controller {
 	 /**
 	  * Reads the next processor request.
 	  * The request read is placed into the m_iss_req member structure.
-	  * Must be called only if p_in_iss_req.empty(this) == false
+	  * Must be called only if p_in_iss_req.empty(p_in_iss_req_port) == false
 	  * Note: This function can be called twice for the same request
 	  * (it does not consumes the request)
 	  * so addToFinishedReqs can be called twice.
 	  */
 	 private void getIssRequest() {
-		 m_iss_req = p_in_iss_req.front(this);
+		 m_iss_req = p_in_iss_req.front(p_in_iss_req_port);
 		 m_iss_req.setStartCycle(m_cycle); // Must be done here since proc requests can be added before simulation starts
-		 p_in_iss_req.addToFinishedReqs(this);
-		 System.out.println(m_name + " gets:\n" + m_iss_req);
+		 p_in_iss_req.addToFinishedReqs(p_in_iss_req_port);
+		 if (m_tracer.info()) m_iss_req.trace(m_tracer, " gets:");
 	 }
 
 
@@ -154,56 +171,64 @@ public class L1MesiController implements L1Controller {
 	  * @param data Data value if the type of the response is RSP_READ_WORD
 	  */
 	 private void sendIssResponse(long addr, cmd_t type, long data) {
-		 p_in_iss_req.popFront(this); // remove request from channel
-		 List<Long> l = new ArrayList<Long>();
-		 l.add(data);
+		 Request done = p_in_iss_req.front(p_in_iss_req_port);
+		 p_in_iss_req.popFront(p_in_iss_req_port); // remove request from channel
 		 Request req = null;
 		 if (type == cmd_t.RSP_WRITE_WORD) {
-			 req = new Request(addr, r_srcid, // srcid
+			 req = Request.obtain(addr, r_srcid, // srcid
 					 r_procid, // targetid (srcid of the proc)
 					 type, // cmd
 					 m_cycle, // start cycle
 					 0); // max duration
 		 }
 		 else if (type == cmd_t.RSP_READ_WORD) {
-			 req = new Request(addr, r_srcid, // srcid
+			 req = Request.obtainWord(addr, r_srcid, // srcid
 					 r_procid, // targetid (srcid of the proc)
 					 type, // cmd
 					 m_cycle, // start cycle
 					 0, // max_duration
-					 l, // data
+					 data, // data
 					 0xF); // be
 		 }
 		 else {
 			 assert (false);
 		 }
 
+		 req.answers(done);
+		 done.release();
 		 p_out_iss_rsp.pushBack(req);
+		 m_iss_req = null;
 	 }
 
 
 	 /**
 	  * Reads and pops the next coherence request from a ram.
-	  * The request read is placed into the m_req member structure.
-	  * Must be called only if p_in_req.empty(this) == false
+	  * The request read is placed into the m_req member structure, and the previous one is released.
+	  * Must be called only if p_in_req.empty(p_in_req_port) == false
 	  */
 	 private void getRequest() {
-		 m_req = p_in_req.front(this);
+		 if (m_req != null) {
+			 m_req.release();
+		 }
+		 m_req = p_in_req.front(p_in_req_port);
 		 assert (m_req.getNwords() == 0);
-		 p_in_req.popFront(this);
-		 System.out.println(m_name + " gets req:\n" + m_req);
+		 p_in_req.popFront(p_in_req_port);
+		 if (m_tracer.info()) m_req.trace(m_tracer, " gets req:");
 	 }
 
 
 	 /**
 	  * Reads and pops the next direct response from a ram.
-	  * The response read is placed into the m_rsp member structure.
-	  * Must be called only if p_in_rsp.empty(this) == false
+	  * The response read is placed into the m_rsp member structure, and the previous one is released.
+	  * Must be called only if p_in_rsp.empty(p_in_rsp_port) == false
 	  */
 	 private void getResponse() {
-		 m_rsp = p_in_rsp.front(this);
-		 p_in_rsp.popFront(this);
-		 System.out.println(m_name + " gets rsp:\n" + m_rsp);
+		 if (m_rsp != null) {
+			 m_rsp.release();
+		 }
+		 m_rsp = p_in_rsp.front(p_in_rsp_port);
+		 p_in_rsp.popFront(p_in_rsp_port);
+		 if (m_tracer.info()) m_rsp.trace(m_tracer, " gets rsp:");
 	 }
 
 
@@ -213,10 +238,10 @@ public class L1MesiController implements L1Controller {
 	  * @param type Type of the request
 	  * @param data Values to update if appropriated, null otherwise
 	  */
-	 private void sendRequest(long addr, cmd_t type, List<Long> rdata) {
-		 Request req = new Request(addr, r_srcid, -1, type, m_cycle, 3, rdata, 0xF);
+	 private void sendRequest(long addr, cmd_t type, long [] rdata) {
+		 Request req = Request.obtain(addr, r_srcid, -1, type, m_cycle, 3, rdata, m_words, 0xF);
 		 p_out_req.pushBack(req);
-		 System.out.println(m_name + " sends req:\n" + req);
+		 if (m_tracer.info()) req.trace(m_tracer, " sends req:");
 	 }
 
 
@@ -227,10 +252,34 @@ public class L1MesiController implements L1Controller {
 	  * @param wdata Value to write if any
 	  * @param be Byte Enable in case of write
 	  */
-	 private void sendResponse(long addr, int tgtid, cmd_t type, List<Long> rdata) {
-		 Request rsp = new Request(addr, r_srcid, tgtid, type, m_cycle, 3, rdata, 0xF);
+	 private void sendResponse(long addr, int tgtid, cmd_t type, long [] rdata) {
+		 Request rsp = Request.obtain(addr, r_srcid, tgtid, type, m_cycle, 3, rdata, m_words, 0xF);
+		 rsp.answers(m_req);
 		 p_out_rsp.pushBack(rsp);
-		 System.out.println(m_name + " sends rsp:\n" + rsp);
+		 if (m_tracer.info()) rsp.trace(m_tracer, " sends rsp:");
+	 }
+
+
+	 /**
+	  * Called when the request channel is full or when a write-back is not acknowledged yet:
+	  * invalidations are still served, since the memory controller may wait for their responses
+	  * before consuming requests.
+	  */
+	 private void stall() {
+		 if (!p_in_req.empty(p_in_req_port)) {
+			 getRequest();
+			 r_fsm_state = FsmState.FSM_INVAL;
+		 }
+	 }
+
+
+	 /**
+	  * @return true if the line containing addr is being written back and the write-back is not
+	  *         acknowledged yet: the memory may still serve requests for that line from its stale copy,
+	  *         and write-backs can even be overtaken when they travel in another traffic class.
+	  */
+	 private boolean isWrittenBack(long addr) {
+		 return r_current_wb && align(addr) == r_wb_addr;
 	 }
 
 
@@ -240,13 +289,13 @@ public class L1MesiController implements L1Controller {
 		 /* Massine */
 		 case FSM_IDLE:
 			 r_fsm_prev_state= FsmState.FSM_IDLE;
-			 if (! p_in_iss_req.empty(this)){
+			 if (! p_in_iss_req.empty(p_in_iss_req_port)){
 				 getIssRequest();
 				 if (m_iss_req.getCmd()==cmd_t.READ_WORD){
 					 LineState state = new LineState();
-					 List<Long> data = new ArrayList<Long>();
+					 long [] data = m_read_buf;
 					 if (m_cache_l1.read(m_iss_req.getAddress(), data, state)){
-						 sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_READ_WORD, data.get(0));
+						 sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_READ_WORD, data[0]);
 						 break;
 					 }else{
 						 r_cmd_req=cmd_t.READ_LINE;
@@ -259,10 +308,10 @@ public class L1MesiController implements L1Controller {
 					 m_cache_l1.readDir(m_iss_req.getAddress(), state);
 					 if (state.exclu && state.state==cacheSlotState.VALID){
 						 r_fsm_prev_state=FsmState.FSM_IDLE;
-						 sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_WRITE_WORD, 0);
 						 state.dirty= true;
 						 m_cache_l1.writeDir(m_iss_req.getAddress(), state);
-						 m_cache_l1.write(m_iss_req.getAddress(), m_iss_req.getData().get(0), m_iss_req.getBe());
+						 m_cache_l1.write(m_iss_req.getAddress(), m_iss_req.getWord(0), m_iss_req.getBe());
+						 sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_WRITE_WORD, 0);
 
 						 break;
 
@@ -275,7 +324,7 @@ public class L1MesiController implements L1Controller {
 				 }
 
 			 }
-			 if (! p_in_req.empty(this)){
+			 if (! p_in_req.empty(p_in_req_port)){
 				 getRequest();
 				 r_fsm_prev_state=FsmState.FSM_IDLE;
 				 r_fsm_state=FsmState.FSM_INVAL;
@@ -285,6 +334,10 @@ public class L1MesiController implements L1Controller {
 			 break;
 		 case FSM_MISS:
 			 r_fsm_prev_state=FsmState.FSM_MISS;
+			 if (!p_out_req.canPush(1) || isWrittenBack(m_iss_req.getAddress())) {
+				 stall();
+				 break;
+			 }
 			 LineState state = new LineState();
 			 CacheAccessResult result;
 
@@ -294,6 +347,9 @@ public class L1MesiController implements L1Controller {
 					 sendRequest(m_iss_req.getAddress(), cmd_t.READ_LINE, null);
 					 r_cmd_req = cmd_t.READ_LINE;
 					 r_fsm_state = FsmState.FSM_MISS_WAIT;
+				 }else if (r_current_wb){
+					 // the write-back buffer is still in use
+					 stall();
 				 }else{
 					 r_wb_addr = result.victimAddress;
 					 r_wb_buf = result.data;
@@ -308,7 +364,9 @@ public class L1MesiController implements L1Controller {
 					 r_fsm_state = FsmState.FSM_MISS_WAIT;
 				 }else{
 					 result=m_cache_l1.readSelect(m_iss_req.getAddress());
-					 if (result.victimDirty){
+					 if (result.victimDirty && r_current_wb){
+						 stall();
+					 }else if (result.victimDirty){
 						 r_wb_addr = result.victimAddress;
 						 r_wb_buf = result.data;
 						 r_fsm_state = FsmState.FSM_WRITE_BACK;
@@ -323,7 +381,7 @@ public class L1MesiController implements L1Controller {
 		 case FSM_MISS_WAIT:
 			 r_fsm_prev_state=FsmState.FSM_MISS_WAIT;
 
-			 if (!p_in_req.empty(this)) {
+			 if (!p_in_req.empty(p_in_req_port)) {
 				 getRequest();
 				 //		if(m_req.getCmd()==cmd_t.INVAL){
 					 r_fsm_state=FsmState.FSM_INVAL;
@@ -339,6 +397,16 @@ public class L1MesiController implements L1Controller {
 						 m_cache_l1.setLine(m_iss_req.getAddress(), m_rsp.getData(), false);
 					 }else if(m_rsp.getCmd()==cmd_t.RSP_GETM_LINE){
 						 m_cache_l1.setLine(m_iss_req.getAddress(), m_rsp.getData(), true);
+					 }else{
+						 LineState state_getm = new LineState();
+						 m_cache_l1.readDir(m_iss_req.getAddress(), state_getm);
+						 if (state_getm.state != cacheSlotState.VALID){
+							 // an invalidation of the line was served while waiting for the response:
+							 // the line is requested again, with its data
+							 r_rsp_miss_ok = false;
+							 r_fsm_state = FsmState.FSM_MISS;
+							 break;
+						 }
 					 }
 				 }
 				 r_rsp_miss_ok=false;
@@ -347,7 +415,7 @@ public class L1MesiController implements L1Controller {
 					 r_fsm_state= FsmState.FSM_WRITE_UPDATE;
 				 }else{
 					 sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_READ_WORD, 
-							 m_rsp.getData().get(((int)m_iss_req.getAddress()%(m_words*4))/4));
+							 m_rsp.getWord(wordIndex(m_iss_req.getAddress())));
 					 r_fsm_state = FsmState.FSM_IDLE;	
 				 }
 			 }
@@ -359,14 +427,24 @@ public class L1MesiController implements L1Controller {
 			 state_update.dirty = true;
 			 state_update.exclu = true;
 			 m_cache_l1.writeDir(m_iss_req.getAddress(), state_update);
-			 m_cache_l1.write(m_iss_req.getAddress(), m_iss_req.getData().get(0), m_iss_req.getBe());
+			 m_cache_l1.write(m_iss_req.getAddress(), m_iss_req.getWord(0), m_iss_req.getBe());
 			 sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_WRITE_WORD, 
 					 1);
 			 r_fsm_state=FsmState.FSM_IDLE;	
 			 break;
 		 case FSM_INVAL:
+			 if (!p_out_rsp.canPush(1)) {
+				 break;
+			 }
 			 CacheAccessResult res;
-			 if (m_req.getCmd() == cmd_t.INVAL){
+			 if (isWrittenBack(m_req.getAddress())){
+				 // the line is no longer in the cache, but the memory may not have received its write-back
+				 if (m_req.getCmd() == cmd_t.INVAL){
+					 sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_INVAL_DIRTY, r_wb_buf);
+				 }else{
+					 sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_INVAL_RO_DIRTY, r_wb_buf);
+				 }
+			 }else if (m_req.getCmd() == cmd_t.INVAL){
 				 res = m_cache_l1.inval(m_req.getAddress(), true);
 				 if(res.victimFound && res.victimDirty){
 					 sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_INVAL_DIRTY, res.data);
@@ -390,6 +468,8 @@ public class L1MesiController implements L1Controller {
 			 r_fsm_prev_state = FsmState.FSM_WRITE_BACK;
 			 if(r_current_wb){
 				 //NOP
+			 }else if (!p_out_req.canPush(1)) {
+				 stall();
 			 }else{
 				 r_current_wb = true;
 				 sendRequest(r_wb_addr, cmd_t.WRITE_LINE, r_wb_buf);
@@ -404,10 +484,10 @@ public class L1MesiController implements L1Controller {
 			 break;
 		 }
 
-		 System.out.println(m_name + " next state: " + r_fsm_state);
+		 if (m_tracer.debug()) m_tracer.value(" next state: ", r_fsm_state);
 
 		 // Following code equivalent to a 1-state FSM executing in parallel
-		 if (!p_in_rsp.empty(this)) {
+		 if (!p_in_rsp.empty(p_in_rsp_port)) {
 			 getResponse();
 			 if (m_rsp.getCmd() == cmd_t.RSP_READ_LINE || m_rsp.getCmd() == cmd_t.RSP_READ_LINE_EX || m_rsp.getCmd() == cmd_t.RSP_GETM ||
 					 m_rsp.getCmd() == cmd_t.RSP_GETM_LINE) {
@@ -424,6 +504,32 @@ public class L1MesiController implements L1Controller {
 	 }
 
 
+	 /**
+	  * The controller is idle when it waits for a processor request, for the response to a miss or
+	  * for the end of a write-back, and when no request or response is available.
+	  */
+	 public boolean isIdle() {
+		 if (!p_in_iss_req.empty(p_in_iss_req_port) || !p_in_req.empty(p_in_req_port) || !p_in_rsp.empty(p_in_rsp_port)) {
+			 return false;
+		 }
+		 return r_fsm_state == FsmState.FSM_IDLE
+				 || (r_fsm_state == FsmState.FSM_MISS_WAIT && !r_rsp_miss_ok)
+				 || (r_fsm_state == FsmState.FSM_WRITE_BACK && r_current_wb)
+				 || (r_fsm_state == FsmState.FSM_MISS && isWrittenBack(m_iss_req.getAddress()));
+	 }
+
+
+	 public void skipCycles(int nbCycles) {
+		 r_fsm_prev_state = r_fsm_state; // done at each cycle in the waiting states
+		 m_cycle += nbCycles;
+	 }
+
+
+	 public void setReplacementPolicy(ReplacementPolicy policy) {
+		 m_cache_l1.setReplacementPolicy(policy);
+	 }
+
+
 	 public int getSrcid() {
 		 return r_srcid;
 	 }
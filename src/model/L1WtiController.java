@@ -1,8 +1,8 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
 
+import utils.Trace;
+import utils.Tracer;
 import utils.Utile;
 import model.LineState.cacheSlotState;
 import model.Request.cmd_t;
@@ -62,16 +62,21 @@ public class L1WtiController implements L1Controller {
 	
 	private String m_name;
 	
+	private Tracer m_tracer;
+	
 	private CacheL1 m_cache_l1;
 	
 	/**
 	 * Channels
 	 */
 	private Channel p_in_req; // incoming coherence requests from ram
+	private int p_in_req_port;
 	private Channel p_out_rsp; // outgoing coherence responses to ram
 	private Channel p_out_req; // outgoing direct requests to ram
 	private Channel p_in_rsp; // incoming direct responses from ram
+	private int p_in_rsp_port;
 	private Channel p_in_iss_req; // incoming processor requests
+	private int p_in_iss_req_port;
 	private Channel p_out_iss_rsp; // outgoing processor responses
 	
 	private FsmState r_fsm_state;
@@ -89,17 +94,29 @@ public class L1WtiController implements L1Controller {
 	 * Last processor request received from the ram, written by method getIssRequest()
 	 */
 	private Request m_iss_req;
+	/**
+	 * Word read by the cache on a processor read hit
+	 */
+	private long [] m_read_buf = new long[1];
 	
 	private long align(long addr) {
 		return (addr & ~((1 << (2 + Utile.log2(m_words))) - 1));
 	}
 
+	/**
+	 * @return the index in its line of the word at address addr
+	 */
+	private int wordIndex(long addr) {
+		return (int) ((addr >>> 2) & (m_words - 1));
+	}
+
 	public L1WtiController(String name, int procid, int nways, int nsets, int nwords, Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem,
 			Channel rsp_to_mem, Channel req_from_iss, Channel rsp_to_iss) {
 		r_procid = procid;
 		r_srcid = l1StartId + procid;
 		m_words = nwords;
 		m_name = name;
+		m_tracer = Trace.getTracer(name);
 		m_cycle = 0;
 		p_in_req = req_from_mem;
 		p_out_rsp = rsp_to_mem;
@@ -108,9 +125,9 @@ public class L1WtiController implements L1Controller {
 		p_in_iss_req = req_from_iss;
 		p_out_iss_rsp = rsp_to_iss;
 		m_cache_l1 = new CacheL1("CacheL1", procid, nways, nsets, nwords);
-		p_in_req.addTgtidTranslation(r_srcid, this); // Translation r_srcid (real unique srcid) to channel index
-		p_in_rsp.addTgtidTranslation(r_srcid, this);
-		p_in_iss_req.addTgtidTranslation(r_srcid, this);
+		p_in_req_port = p_in_req.addTgtidTranslation(r_srcid, this); // Translation r_srcid (real unique srcid) to channel index
+		p_in_rsp_port = p_in_rsp.addTgtidTranslation(r_srcid, this);
+		p_in_iss_req_port = p_in_iss_req.addTgtidTranslation(r_srcid, this);
 		reset();
 	}
 	
@@ -127,16 +144,16 @@ public class L1WtiController implements L1Controller {
 	/**
 	 * Reads the next processor request.
 	 * The request read is placed into the m_iss_req member structure.
-	 * Must be called only if p_in_iss_req.empty(this) == false
+	 * Must be called only if p_in_iss_req.empty(p_in_iss_req_port) == false
 	 * Note: This function can be called twice for the same request
 	 * (it does not consumes the request)
 	 * so addToFinishedReqs can be called twice.
 	 */
 	private void getIssRequest() {
-		m_iss_req = p_in_iss_req.front(this);
+		m_iss_req = p_in_iss_req.front(p_in_iss_req_port);
 		m_iss_req.setStartCycle(m_cycle); // Must be done here since proc requests can be added before simulation starts
-		p_in_iss_req.addToFinishedReqs(this);
-		System.out.println(m_name + " gets:\n" + m_iss_req);
+		p_in_iss_req.addToFinishedReqs(p_in_iss_req_port);
+		if (m_tracer.info()) m_iss_req.trace(m_tracer, " gets:");
 	}
 	
 
@@ -148,39 +165,31 @@ public class L1WtiController implements L1Controller {
 	 * @param data Data value if the type of the response is RSP_READ_WORD
 	 */
 	private void sendIssResponse(long addr, cmd_t type, long data) {
-		p_in_iss_req.popFront(this); // remove request from channel
-		List<Long> l = new ArrayList<Long>();
-		l.add(data);
+		Request done = p_in_iss_req.front(p_in_iss_req_port);
+		p_in_iss_req.popFront(p_in_iss_req_port); // remove request from channel
 		Request req;
 		if (type == cmd_t.RSP_WRITE_WORD) {
-			req = new Request(addr, r_srcid, // srcid
+			req = Request.obtain(addr, r_srcid, // srcid
 					r_procid, // targetid (srcid of the proc)
 					type, // cmd
 					m_cycle, // start cycle
 					0); // max duration
 		}
-		else if (type == cmd_t.RSP_READ_WORD) {
-			req = new Request(addr, r_srcid, // srcid
-					r_procid, // targetid (srcid of the proc)
-					type, // cmd
-					m_cycle, // start cycle
-					0, // max_duration
-					l, // data
-					0xF); // be
-		}
-		else if (type == cmd_t.RSP_SYNC){
-			req = new Request(addr, r_srcid, // srcid
+		else if (type == cmd_t.RSP_READ_WORD || type == cmd_t.RSP_SYNC) {
+			req = Request.obtainWord(addr, r_srcid, // srcid
 					r_procid, // targetid (srcid of the proc)
 					type, // cmd
 					m_cycle, // start cycle
 					0, // max_duration
-					l, // data
+					data, // data
 					0xF); // be
 		}
 		else {
 			req = null; // avoid error
 			assert (false);
 		}
+		req.answers(done);
+		done.release();
 		p_out_iss_rsp.pushBack(req);
 		m_iss_req = null;
 	}
@@ -188,26 +197,32 @@ public class L1WtiController implements L1Controller {
 	
 	/**
 	 * Reads and pops the next coherence request from a ram.
-	 * The request read is placed into the m_req member structure.
-	 * Must be called only if p_in_req.empty(this) == false
+	 * The request read is placed into the m_req member structure, and the previous one is released.
+	 * Must be called only if p_in_req.empty(p_in_req_port) == false
 	 */
 	private void getRequest() {
-		m_req = p_in_req.front(this);
+		if (m_req != null) {
+			m_req.release();
+		}
+		m_req = p_in_req.front(p_in_req_port);
 		assert (m_req.getNwords() == 0);
-		p_in_req.popFront(this);
-		System.out.println(m_name + " gets req:\n" + m_req);
+		p_in_req.popFront(p_in_req_port);
+		if (m_tracer.info()) m_req.trace(m_tracer, " gets req:");
 	}
 	
 
 	/**
 	 * Reads and pops the next direct response from a ram.
-	 * The response read is placed into the m_rsp member structure.
-	 * Must be called only if p_in_rsp.empty(this) == false
+	 * The response read is placed into the m_rsp member structure, and the previous one is released.
+	 * Must be called only if p_in_rsp.empty(p_in_rsp_port) == false
 	 */
 	private void getResponse() {
-		m_rsp = p_in_rsp.front(this);
-		p_in_rsp.popFront(this);
-		System.out.println(m_name + " gets rsp:\n" + m_rsp);
+		if (m_rsp != null) {
+			m_rsp.release();
+		}
+		m_rsp = p_in_rsp.front(p_in_rsp_port);
+		p_in_rsp.popFront(p_in_rsp_port);
+		if (m_tracer.info()) m_rsp.trace(m_tracer, " gets rsp:");
 	}
 	
 
@@ -217,10 +232,10 @@ public class L1WtiController implements L1Controller {
 	 * @param type Type of the request
 	 * @param data Values to update if appropriated, null otherwise
 	 */
-	private void sendRequest(long addr, cmd_t type, List<Long> data) {
-		Request req = new Request(addr, r_srcid, -1, type, m_cycle, 3, data, 0xF);
+	private void sendRequest(long addr, cmd_t type, long [] data) {
+		Request req = Request.obtain(addr, r_srcid, -1, type, m_cycle, 3, data, m_words, 0xF);
 		p_out_req.pushBack(req);
-		System.out.println(m_name + " sends req:\n" + req);
+		if (m_tracer.info()) req.trace(m_tracer, " sends req:");
 	}
 	
 	/**
@@ -230,12 +245,10 @@ public class L1WtiController implements L1Controller {
 	 * @param wdata Value to write if any
 	 * @param be Byte Enable in case of write
 	 */
-	private void sendRequest(long addr, cmd_t type, Long wdata, int be) {
-		List<Long> data = new ArrayList<Long>();
-		data.add(wdata);
-		Request req = new Request(addr, r_srcid, -1, type, m_cycle, 3, data, be);
+	private void sendRequest(long addr, cmd_t type, long wdata, int be) {
+		Request req = Request.obtainWord(addr, r_srcid, -1, type, m_cycle, 3, wdata, be);
 		p_out_req.pushBack(req);
-		System.out.println(m_name + " sends req:\n" + req);
+		if (m_tracer.info()) req.trace(m_tracer, " sends req:");
 	}
 	
 
@@ -246,27 +259,41 @@ public class L1WtiController implements L1Controller {
 	 * @param type Type of the response
 	 * @param rdata up-to-date values for the line in case of a write-back in the response, null otherwise
 	 */
-	private void sendResponse(long addr, int tgtid, cmd_t type, List<Long> rdata) {
-		Request rsp = new Request(addr, r_srcid, tgtid, type, m_cycle, 3, rdata, 0xF);
+	private void sendResponse(long addr, int tgtid, cmd_t type, long [] rdata) {
+		Request rsp = Request.obtain(addr, r_srcid, tgtid, type, m_cycle, 3, rdata, m_words, 0xF);
+		rsp.answers(m_req);
 		p_out_rsp.pushBack(rsp);
-		System.out.println(m_name + " sends rsp:\n" + rsp);
+		if (m_tracer.info()) rsp.trace(m_tracer, " sends rsp:");
 	}
 	
 
+	/**
+	 * Called when the request channel is full: invalidations are still served,
+	 * since the memory controller may wait for their responses before consuming requests.
+	 */
+	private void stall() {
+		if (!p_in_req.empty(p_in_req_port)) {
+			getRequest();
+			if (m_req.getCmd() == cmd_t.INVAL) {
+				r_fsm_state = FsmState.FSM_INVAL;
+			}
+		}
+	}
+	
 	public void simulate1Cycle() {
 		
 		switch (r_fsm_state) {
 			/* Massine */
 		case FSM_IDLE:
 			r_fsm_prev_state = FsmState.FSM_IDLE;
-			if(!p_in_iss_req.empty(this)){
+			if(!p_in_iss_req.empty(p_in_iss_req_port)){
 				getIssRequest();
 				if (m_iss_req.getCmd()== cmd_t.READ_WORD){
 					LineState state = new LineState();
-					List<Long> data = new ArrayList<Long>();
+					long [] data = m_read_buf;
 
 					if(m_cache_l1.read(m_iss_req.getAddress(), data , state)){ // hit
-						sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_READ_WORD, data.get(0));
+						sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_READ_WORD, data[0]);
 					}else{
 						r_fsm_state = FsmState.FSM_MISS;
 						break;
@@ -278,7 +305,7 @@ public class L1WtiController implements L1Controller {
 					
 					if(state.state==cacheSlotState.VALID){
 						m_cache_l1.write(m_iss_req.getAddress(), 
-						m_iss_req.getData().get(0), m_iss_req.getBe());
+						m_iss_req.getWord(0), m_iss_req.getBe());
 					}
 						r_fsm_state =  FsmState.FSM_SEND_WRITE;
 						break;
@@ -292,7 +319,7 @@ public class L1WtiController implements L1Controller {
 				}
 				break;
 			}
-			if(!p_in_req.empty(this)){
+			if(!p_in_req.empty(p_in_req_port)){
 				getRequest();
 				if(m_req.getCmd()==cmd_t.INVAL){
 					r_fsm_state = FsmState.FSM_INVAL;
@@ -302,20 +329,28 @@ public class L1WtiController implements L1Controller {
 			break;
 		case FSM_SEND_WRITE:
 			r_fsm_prev_state = FsmState.FSM_SEND_WRITE;
-			sendRequest(m_iss_req.getAddress(), cmd_t.WRITE_WORD, m_iss_req.getData().get(0), m_iss_req.getBe());
+			if (!p_out_req.canPush(1)) {
+				stall();
+				break;
+			}
+			sendRequest(m_iss_req.getAddress(), cmd_t.WRITE_WORD, m_iss_req.getWord(0), m_iss_req.getBe());
 			write_en_cours++;
 			sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_WRITE_WORD, 0);
 			r_fsm_state = FsmState.FSM_IDLE;
 			break;	
 		case FSM_MISS:
 			r_fsm_prev_state = FsmState.FSM_MISS;
-			sendRequest(m_iss_req.getAddress(), cmd_t.READ_LINE, new Long (0), m_iss_req.getBe());
+			if (!p_out_req.canPush(1)) {
+				stall();
+				break;
+			}
+			sendRequest(m_iss_req.getAddress(), cmd_t.READ_LINE, 0, m_iss_req.getBe());
 			m_cache_l1.readSelect(m_iss_req.getAddress());
 			r_fsm_state = FsmState.FSM_MISS_WAIT;
 			break;
 		case FSM_MISS_WAIT:
 			r_fsm_prev_state = FsmState.FSM_MISS_WAIT;
-			if(!p_in_req.empty(this)){
+			if(!p_in_req.empty(p_in_req_port)){
 				getRequest();
 				if(m_req.getCmd()==cmd_t.INVAL){
 					r_fsm_state = FsmState.FSM_INVAL;
@@ -326,12 +361,14 @@ public class L1WtiController implements L1Controller {
 			m_cache_l1.setLine(m_iss_req.getAddress(), m_rsp.getData(), true);
 			r_rsp_miss_ok=false;
 			sendIssResponse(m_iss_req.getAddress(), cmd_t.RSP_READ_WORD, 
-					m_rsp.getData().get(((int)m_iss_req.getAddress() % m_words) ));
+					m_rsp.getWord(wordIndex(m_iss_req.getAddress())));
 			r_fsm_state = FsmState.FSM_IDLE;
 			}
 			break;
 		case FSM_INVAL:
-		
+			if (!p_out_rsp.canPush(1)) {
+				break;
+			}
 			m_cache_l1.inval(m_req.getAddress(), true);
 			sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_INVAL_CLEAN, null);
 			
@@ -340,7 +377,7 @@ public class L1WtiController implements L1Controller {
 			break;
 		case FSM_SYNC:
 			r_fsm_prev_state = FsmState.FSM_SYNC;
-			if(!p_in_req.empty(this)){
+			if(!p_in_req.empty(p_in_req_port)){
 				getRequest();
 				if(m_req.getCmd()==cmd_t.INVAL){
 					r_fsm_state = FsmState.FSM_INVAL;
@@ -358,11 +395,11 @@ public class L1WtiController implements L1Controller {
 			break;
 		} // end switch(r_fsm_state)
 		
-		System.out.println(m_name + " next state: " + r_fsm_state);
+		if (m_tracer.debug()) m_tracer.value(" next state: ", r_fsm_state);
 		
 		// Following code equivalent to a 1-state FSM executing in parallel,
 		// consuming responses on the p_in_rsp port (r_fsm_rsp)
-		if (!p_in_rsp.empty(this)) {
+		if (!p_in_rsp.empty(p_in_rsp_port)) {
 			getResponse();
 			if (m_rsp.getCmd() == cmd_t.RSP_READ_LINE) {
 				// Response to the miss received, we can unblock the r_fsm_state via the r_rsp_miss_ok register
@@ -380,6 +417,31 @@ public class L1WtiController implements L1Controller {
 	}
 	
 
+	/**
+	 * The controller is idle when it waits for a processor request, for the response to a miss or
+	 * for the write responses of a SYNC, and when no request or response is available.
+	 */
+	public boolean isIdle() {
+		if (!p_in_iss_req.empty(p_in_iss_req_port) || !p_in_req.empty(p_in_req_port) || !p_in_rsp.empty(p_in_rsp_port)) {
+			return false;
+		}
+		return r_fsm_state == FsmState.FSM_IDLE
+				|| (r_fsm_state == FsmState.FSM_MISS_WAIT && !r_rsp_miss_ok)
+				|| (r_fsm_state == FsmState.FSM_SYNC && write_en_cours != 0);
+	}
+	
+
+	public void skipCycles(int nbCycles) {
+		r_fsm_prev_state = r_fsm_state; // done at each cycle in the waiting states
+		m_cycle += nbCycles;
+	}
+	
+
+	public void setReplacementPolicy(ReplacementPolicy policy) {
+		m_cache_l1.setReplacementPolicy(policy);
+	}
+	
+
 	public int getSrcid() {
 		return r_srcid;
 	}
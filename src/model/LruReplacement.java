@@ -0,0 +1,51 @@
+package model;
+
+/**
+ * Least recently used replacement: each way records the date of its last access, and the victim is the candidate
+ * way with the oldest date.
+ * @author QLM
+ *
+ */
+class LruReplacement implements Replacement {
+
+	private int m_ways;
+	private long [] r_date; // [set][way]
+	private long r_clock;
+
+	LruReplacement(int nsets, int nways) {
+		assert (nways <= 64);
+		m_ways = nways;
+		r_date = new long[nsets * nways];
+	}
+
+	public void reset() {
+		for (int i = 0; i < r_date.length; i++) {
+			r_date[i] = 0;
+		}
+		r_clock = 0;
+	}
+
+	public void touch(int set, int way) {
+		r_clock++;
+		r_date[set * m_ways + way] = r_clock;
+	}
+
+	public void fill(int set, int way) {
+		touch(set, way);
+	}
+
+	public void invalidate(int set, int way) {
+		r_date[set * m_ways + way] = 0;
+	}
+
+	public int victim(int set, long candidates) {
+		int res = -1;
+		for (long c = candidates; c != 0; c &= c - 1) {
+			int way = Long.numberOfTrailingZeros(c);
+			if (res == -1 || r_date[set * m_ways + way] < r_date[set * m_ways + res]) {
+				res = way;
+			}
+		}
+		return res;
+	}
+}
@@ -1,4 +1,11 @@
 package model;
 
 
-public interface MemController extends Module {}
+public interface MemController extends Module {
+
+	/**
+	 * Default srcid of the first memory controller, the memory controller i having the srcid memStartId + i;
+	 * the L1 caches have lower srcids.
+	 */
+	public static final int memStartId = 100;
+}
@@ -1,8 +1,9 @@
 package model;
 
-import java.util.List;
 import java.util.Vector;
 
+import utils.Trace;
+import utils.Tracer;
 import utils.Utile;
 
 import model.Ram.BlockState;
@@ -42,22 +43,21 @@ public class MemMesiController implements MemController {
 	 */
 	private int m_cycle;
 
-	/**
-	 * Srcid offset for Ram elements
-	 */
-	private final static int memStartId = 100;
-
 	private String m_name;
 
+	private Tracer m_tracer;
+
 	private Ram m_ram;
 
 	/**
 	 * Channels
 	 */
 	private Channel p_in_req; // direct requests coming from the caches
+	private int p_in_req_port;
 	private Channel p_out_rsp; // responses to direct requests
 	private Channel p_out_req; // coherence requests sent to caches
 	private Channel p_in_rsp; // responses to coherence requests
+	private int p_in_rsp_port;
 
 	private CopiesList m_req_copies_list;
 	private CopiesList m_rsp_copies_list;
@@ -82,29 +82,39 @@ public class MemMesiController implements MemController {
 	 * Last coherence response received from a L1 cache; written by method getResponse()  
 	 */
 	private Request m_rsp;
+	/**
+	 * Copy of the line read in the ram for a response, written by method readLine()
+	 */
+	private long [] m_line;
 
 
 	private long align(long addr) {
 		return (addr & ~((1 << (2 + Utile.log2(m_words))) - 1));
 	}
 
-	public MemMesiController(String name, int id, int nwords,
+	/**
+	 * @param srcid : srcid of the controller, which must differ from the srcids of the L1 caches
+	 *                (see MemController.memStartId)
+	 */
+	public MemMesiController(String name, int srcid, int nwords,
 			Vector<Segment> seglist, Channel req_to_mem, Channel rsp_from_mem,
 			Channel req_from_mem, Channel rsp_to_mem) {
-		m_srcid = id + memStartId; // id is the id among the memories
+		m_srcid = srcid;
 		m_words = nwords;
+		m_line = new long[nwords];
 		m_name = name;
+		m_tracer = Trace.getTracer(name);
 		m_cycle = 0;
 		p_in_req = req_to_mem;
 		p_out_rsp = rsp_from_mem;
 		p_out_req = req_from_mem;
 		p_in_rsp = rsp_to_mem;
-		m_ram = new Ram("Ram", nwords, seglist);
+		m_ram = new Ram(name + " ram", nwords, seglist);
 		for (Segment seg : seglist) {
 			seg.setTgtid(m_srcid);
 		}
-		p_in_req.addAddrTranslation(seglist, this);
-		p_in_rsp.addTgtidTranslation(m_srcid, this);
+		p_in_req_port = p_in_req.addAddrTranslation(seglist, this);
+		p_in_rsp_port = p_in_rsp.addTgtidTranslation(m_srcid, this);
 		reset();
 	}
 
@@ -118,24 +128,39 @@ public class MemMesiController implements MemController {
 
 	/**
 	 * Reads and pops the next direct request from a L1 cache.
-	 * The request read is placed into the m_req member structure.
-	 * Must be called only if p_in_req.empty(this) == false
+	 * The request read is placed into the m_req member structure, and the previous one is released.
+	 * Must be called only if p_in_req.empty(p_in_req_port) == false
 	 */
 	private void getRequest() {
-		m_req = p_in_req.front(this);
-		p_in_req.popFront(this);
-		System.out.println(m_name + " receives req:\n" + m_req);
+		if (m_req != null) {
+			m_req.release();
+		}
+		m_req = p_in_req.front(p_in_req_port);
+		p_in_req.popFront(p_in_req_port);
+		if (m_tracer.info()) m_req.trace(m_tracer, " receives req:");
 	}
 
 	/**
 	 * Reads and pops the next coherence response from a L1 cache.
-	 * The response read is placed into the m_rsp member structure.
-	 * Must be called only if p_in_rsp.empty(this) == false
+	 * The response read is placed into the m_rsp member structure, and the previous one is released.
+	 * Must be called only if p_in_rsp.empty(p_in_rsp_port) == false
 	 */
 	private void getResponse() {
-		m_rsp = p_in_rsp.front(this);
-		p_in_rsp.popFront(this);
-		System.out.println(m_name + " receives rsp:\n" + m_rsp);
+		if (m_rsp != null) {
+			m_rsp.release();
+		}
+		m_rsp = p_in_rsp.front(p_in_rsp_port);
+		p_in_rsp.popFront(p_in_rsp_port);
+		if (m_tracer.info()) m_rsp.trace(m_tracer, " receives rsp:");
+	}
+
+	/**
+	 * Reads the line containing the address addr from the ram into m_line.
+	 * @return m_line
+	 */
+	private long [] readLine(long addr) {
+		m_ram.getLine(addr, m_line);
+		return m_line;
 	}
 
 	/**
@@ -145,9 +170,9 @@ public class MemMesiController implements MemController {
 	 * @param type Type of the coherence request
 	 */
 	private void sendRequest(long addr, int targetid, cmd_t type) {
-		Request req = new Request(addr, m_srcid, targetid, type, m_cycle, 3);
+		Request req = Request.obtain(addr, m_srcid, targetid, type, m_cycle, 3);
 		p_out_req.pushBack(req);
-		System.out.println(m_name + " sends req:\n" + req);
+		if (m_tracer.info()) req.trace(m_tracer, " sends req:");
 	}
 
 	/**
@@ -157,11 +182,12 @@ public class MemMesiController implements MemController {
 	 * @param type Type of the response
 	 * @param rdata Data associated with the response (typically, copy of a line)
 	 */
-	private void sendResponse(long addr, int targetid, cmd_t type, List<Long> rdata) {
-		Request rsp = new Request(addr, m_srcid, targetid, type, m_cycle, 3, // max_duration
-				rdata, 0xF);
+	private void sendResponse(long addr, int targetid, cmd_t type, long [] rdata) {
+		Request rsp = Request.obtain(addr, m_srcid, targetid, type, m_cycle, 3, // max_duration
+				rdata, m_words, 0xF);
+		rsp.answers(m_req);
 		p_out_rsp.pushBack(rsp);
-		System.out.println(m_name + " sends rsp:\n" + rsp);
+		if (m_tracer.info()) rsp.trace(m_tracer, " sends rsp:");
 	}
 
 	public void simulate1Cycle() {
@@ -169,7 +195,7 @@ public class MemMesiController implements MemController {
 		switch (r_fsm_state) {
 		/* Massine */
 		case FSM_IDLE:
-			if (!p_in_req.empty(this)){
+			if (!p_in_req.empty(p_in_req_port)){
 				getRequest();
 				switch (m_req.getCmd()){
 				case READ_LINE:
@@ -202,6 +228,9 @@ public class MemMesiController implements MemController {
 			break;
 
 		case FSM_RSP_READ: 
+			if (!p_out_rsp.canPush(1)) {
+				break;
+			}
 			m_ram.addCopy(m_req.getAddress(), m_req.getSrcid());
 			if(m_ram.nbCopies(m_req.getAddress())==1){
 				m_ram.setState(m_req.getAddress(),BlockState.EXCLUSIVE);	
@@ -210,16 +239,20 @@ public class MemMesiController implements MemController {
 			}
 			if(m_ram.isExclu(m_req.getAddress())){
 				sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_READ_LINE_EX,
-						m_ram.getLine(m_req.getAddress()));
+						readLine(m_req.getAddress()));
 			}else{
 				sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_READ_LINE,
-						m_ram.getLine(m_req.getAddress()));
+						readLine(m_req.getAddress()));
 			}
 			r_fsm_state = FsmState.FSM_IDLE;
 			break;
 
 		case FSM_WRITE_LINE:
-			m_ram.writeLine(m_req.getAddress(), m_req.getData());
+			// Without copy, the line was invalidated before the write-back arrived, and its data was
+			// already written from the invalidation response: it may have been modified since then.
+			if (m_ram.hasCopy(m_req.getAddress(), m_req.getSrcid())) {
+				m_ram.writeLine(m_req.getAddress(), m_req.getData());
+			}
 			r_fsm_state= FsmState.FSM_DIR_UPDATE;
 			break;
 		case FSM_GETM:
@@ -230,11 +263,14 @@ public class MemMesiController implements MemController {
 			}
 			break;
 		case FSM_RSP_GETM:
+			if (!p_out_rsp.canPush(1)) {
+				break;
+			}
 			if(m_req.getCmd()== cmd_t.GETM){
 				sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_GETM, null);
 			}else{
 				sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_GETM_LINE, 
-						m_ram.getLine(m_req.getAddress()));
+						readLine(m_req.getAddress()));
 			}
 			r_fsm_state= FsmState.FSM_IDLE;
 			break;
@@ -252,7 +288,9 @@ public class MemMesiController implements MemController {
 
 			break;
 		case FSM_INVAL_SEND:
-			if (m_req.getCmd()== cmd_t.READ_LINE) {
+			if (!p_out_req.canPush(1)) {
+				// No invalidation sent in this cycle, but responses are still consumed
+			}else if (m_req.getCmd()== cmd_t.READ_LINE) {
 				int nb = m_req_copies_list.getNextOwner();
 				sendRequest(m_req.getAddress(), nb, cmd_t.INVAL_RO);
 				m_req_copies_list.remove(nb);
@@ -267,7 +305,7 @@ public class MemMesiController implements MemController {
 				if(m_req_copies_list.nbCopies() == 0) r_fsm_state=FsmState.FSM_INVAL_WAIT;
 			}
 		case FSM_INVAL_WAIT:
-			if (!p_in_rsp.empty(this)) {
+			if (!p_in_rsp.empty(p_in_rsp_port)) {
 				getResponse();
 				m_rsp_copies_list.remove(m_rsp.getSrcid());
 				if(m_rsp.getCmd()== cmd_t.RSP_INVAL_DIRTY || m_rsp.getCmd()== cmd_t.RSP_INVAL_RO_DIRTY){
@@ -287,6 +325,9 @@ public class MemMesiController implements MemController {
 			break;
 		case FSM_DIR_UPDATE:
 			if (m_req.getCmd() == cmd_t.WRITE_LINE ) {
+				if (!p_out_rsp.canPush(1)) {
+					break;
+				}
 				m_ram.removeCopy(m_req.getAddress(), m_req.getSrcid());
 				sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_WRITE_LINE, m_req.getData());
 				r_fsm_state = FsmState.FSM_IDLE;
@@ -304,11 +345,24 @@ public class MemMesiController implements MemController {
 			assert (false);
 			break;
 		} // end switch(r_fsm_state)
-		System.out.println(m_name + " next state: " + r_fsm_state);
+		if (m_tracer.debug()) m_tracer.value(" next state: ", r_fsm_state);
 
 		m_cycle++;
 	}
 
+	/**
+	 * The controller is idle when it waits for a direct request or for invalidation responses,
+	 * and none is available.
+	 */
+	public boolean isIdle() {
+		return (r_fsm_state == FsmState.FSM_IDLE && p_in_req.empty(p_in_req_port))
+				|| (r_fsm_state == FsmState.FSM_INVAL_WAIT && p_in_rsp.empty(p_in_rsp_port));
+	}
+
+	public void skipCycles(int nbCycles) {
+		m_cycle += nbCycles;
+	}
+
 	public int getSrcid() {
 		return m_srcid;
 	}
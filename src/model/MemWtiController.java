@@ -1,8 +1,9 @@
 package model;
 
-import java.util.List;
 import java.util.Vector;
 
+import utils.Trace;
+import utils.Tracer;
 import utils.Utile;
 import model.Request.cmd_t;
 
@@ -38,22 +39,21 @@ public class MemWtiController implements MemController {
 	 */
 	private int m_cycle;
 
-	/**
-	 * Srcid offset for Ram elements
-	 */
-	final static int memStartId = 100;
-
 	private String m_name;
 
+	private Tracer m_tracer;
+
 	private Ram m_ram;
 
 	/**
 	 * Channels
 	 */
 	private Channel p_in_req; // direct requests coming from the caches
+	private int p_in_req_port;
 	private Channel p_out_rsp; // responses to direct requests
 	private Channel p_out_req; // coherence requests sent to caches
 	private Channel p_in_rsp; // responses to coherence requests
+	private int p_in_rsp_port;
 
 	private CopiesList m_req_copies_list;
 	private CopiesList m_rsp_copies_list;
@@ -73,6 +73,10 @@ public class MemWtiController implements MemController {
 	 * getResponse()
 	 */
 	private Request m_rsp;
+	/**
+	 * Copy of the line read in the ram for a response, written by method readLine()
+	 */
+	private long [] m_line;
 
 	/**
 	 * Register used for updating the directory after sending invalidations
@@ -83,22 +87,28 @@ public class MemWtiController implements MemController {
 		return (addr & ~((1 << (2 + Utile.log2(m_words))) - 1));
 	}
 
-	public MemWtiController(String name, int id, int nwords, Vector<Segment> seglist, Channel req_to_mem,
+	/**
+	 * @param srcid : srcid of the controller, which must differ from the srcids of the L1 caches
+	 *                (see MemController.memStartId)
+	 */
+	public MemWtiController(String name, int srcid, int nwords, Vector<Segment> seglist, Channel req_to_mem,
 			Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem) {
-		m_srcid = id + memStartId; // Id for srcid
+		m_srcid = srcid;
 		m_words = nwords;
+		m_line = new long[nwords];
 		m_name = name;
+		m_tracer = Trace.getTracer(name);
 		m_cycle = 0;
 		p_in_req = req_to_mem;
 		p_out_rsp = rsp_from_mem;
 		p_out_req = req_from_mem;
 		p_in_rsp = rsp_to_mem;
-		m_ram = new Ram("Ram", nwords, seglist);
+		m_ram = new Ram(name + " ram", nwords, seglist);
 		for (Segment seg : seglist) {
 			seg.setTgtid(m_srcid);
 		}
-		p_in_req.addAddrTranslation(seglist, this);
-		p_in_rsp.addTgtidTranslation(m_srcid, this);
+		p_in_req_port = p_in_req.addAddrTranslation(seglist, this);
+		p_in_rsp_port = p_in_rsp.addTgtidTranslation(m_srcid, this);
 		reset();
 	}
 
@@ -109,24 +119,41 @@ public class MemWtiController implements MemController {
 
 	/**
 	 * Reads and pops the next direct request from a L1 cache. The request read
-	 * is placed into the m_req member structure. Must be called only if
-	 * p_in_req.empty(this) == false
+	 * is placed into the m_req member structure, and the previous one is
+	 * released. Must be called only if
+	 * p_in_req.empty(p_in_req_port) == false
 	 */
 	private void getRequest() {
-		m_req = p_in_req.front(this);
-		p_in_req.popFront(this);
-		System.out.println(m_name + " receives req:\n" + m_req);
+		if (m_req != null) {
+			m_req.release();
+		}
+		m_req = p_in_req.front(p_in_req_port);
+		p_in_req.popFront(p_in_req_port);
+		if (m_tracer.info()) m_req.trace(m_tracer, " receives req:");
 	}
 
 	/**
 	 * Reads and pops the next coherence response from a L1 cache. The response
-	 * read is placed into the m_rsp member structure. Must be called only if
-	 * p_in_rsp.empty(this) == false
+	 * read is placed into the m_rsp member structure, and the previous one is
+	 * released. Must be called only if
+	 * p_in_rsp.empty(p_in_rsp_port) == false
 	 */
 	private void getResponse() {
-		m_rsp = p_in_rsp.front(this);
-		p_in_rsp.popFront(this);
-		System.out.println(m_name + " receives rsp:\n" + m_rsp);
+		if (m_rsp != null) {
+			m_rsp.release();
+		}
+		m_rsp = p_in_rsp.front(p_in_rsp_port);
+		p_in_rsp.popFront(p_in_rsp_port);
+		if (m_tracer.info()) m_rsp.trace(m_tracer, " receives rsp:");
+	}
+
+	/**
+	 * Reads the line containing the address addr from the ram into m_line.
+	 * @return m_line
+	 */
+	private long [] readLine(long addr) {
+		m_ram.getLine(addr, m_line);
+		return m_line;
 	}
 
 	/**
@@ -140,9 +167,9 @@ public class MemWtiController implements MemController {
 	 *            Type of the coherence request
 	 */
 	private void sendRequest(long addr, int targetid, cmd_t type) {
-		Request req = new Request(addr, m_srcid, targetid, type, m_cycle, 3);
+		Request req = Request.obtain(addr, m_srcid, targetid, type, m_cycle, 3);
 		p_out_req.pushBack(req);
-		System.out.println(m_name + " sends req:\n" + req);
+		if (m_tracer.info()) req.trace(m_tracer, " sends req:");
 	}
 
 	/**
@@ -157,11 +184,12 @@ public class MemWtiController implements MemController {
 	 * @param rdata
 	 *            Data associated with the response (typically, copy of a line)
 	 */
-	private void sendResponse(long addr, int targetid, cmd_t type, List<Long> rdata) {
-		Request rsp = new Request(addr, m_srcid, targetid, type, m_cycle, 3, // max_duration
-				rdata, 0xF);
+	private void sendResponse(long addr, int targetid, cmd_t type, long [] rdata) {
+		Request rsp = Request.obtain(addr, m_srcid, targetid, type, m_cycle, 3, // max_duration
+				rdata, m_words, 0xF);
+		rsp.answers(m_req);
 		p_out_rsp.pushBack(rsp);
-		System.out.println(m_name + " sends rsp:\n" + rsp);
+		if (m_tracer.info()) rsp.trace(m_tracer, " sends rsp:");
 	}
 
 	public void simulate1Cycle() {
@@ -169,7 +197,7 @@ public class MemWtiController implements MemController {
 		switch (r_fsm_state) {
 		/* Massine */
 		case FSM_IDLE:
-			if (!p_in_req.empty(this)) {
+			if (!p_in_req.empty(p_in_req_port)) {
 				getRequest();
 				if (m_req.getCmd() == cmd_t.READ_LINE) {
 					r_fsm_state = FsmState.FSM_READ_LINE;
@@ -178,7 +206,7 @@ public class MemWtiController implements MemController {
 					r_fsm_state = FsmState.FSM_WRITE_WORD;
 					break;
 				}
-			} else if (!p_in_rsp.empty(this)) {
+			} else if (!p_in_rsp.empty(p_in_rsp_port)) {
 				getResponse();
 				if (m_rsp.getCmd() == cmd_t.INVAL) {
 					r_fsm_state = FsmState.FSM_DIR_UPDATE;
@@ -207,7 +235,10 @@ public class MemWtiController implements MemController {
 			}
 			break;
 		case FSM_RSP_READ:
-			sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_READ_LINE, m_ram.getLine(m_req.getAddress()));
+			if (!p_out_rsp.canPush(1)) {
+				break;
+			}
+			sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_READ_LINE, readLine(m_req.getAddress()));
 			r_fsm_state = FsmState.FSM_IDLE;
 			break;
 		case FSM_INVAL:
@@ -218,7 +249,7 @@ public class MemWtiController implements MemController {
 			r_fsm_state = FsmState.FSM_INVAL_SEND;
 			break;
 		case FSM_INVAL_WAIT:
-			if (!p_in_rsp.empty(this)) {
+			if (!p_in_rsp.empty(p_in_rsp_port)) {
 				getResponse();
 				m_rsp_copies_list.remove(m_rsp.getSrcid());
 				if (m_rsp_copies_list.nbCopies() == 0) {
@@ -227,18 +258,23 @@ public class MemWtiController implements MemController {
 			}
 			break;
 		case FSM_INVAL_SEND:
+			// Sends as many invalidations as the channel accepts in this cycle
+			int credits = p_out_req.getCredits();
 			int next = m_req_copies_list.getNextOwner();
-			do {
+			while (next != -1 && credits > 0) {
 				sendRequest(m_req.getAddress(), next, cmd_t.INVAL);
 				m_req_copies_list.remove(next);
 				m_rsp_copies_list.add(next);
-				next = m_req_copies_list.getNextOwner();
-			} while (next != -1);
-			m_req_copies_list = new CopiesList(m_rsp_copies_list);
-			r_fsm_state = FsmState.FSM_INVAL_WAIT;
+				credits--;
+				next = m_req_copies_list.nextOwner(next + 1);
+			}
+			if (next == -1) {
+				m_req_copies_list = new CopiesList(m_rsp_copies_list);
+				r_fsm_state = FsmState.FSM_INVAL_WAIT;
+			}
 			break;
 		case FSM_WRITE_WORD:
-			m_ram.write(m_req.getAddress(), m_req.getData().get(0), m_req.getBe());
+			m_ram.write(m_req.getAddress(), m_req.getWord(0), m_req.getBe());
 			if (m_ram.nbCopies(m_req.getAddress()) == 1
 					&& (!m_ram.getCopies(m_req.getAddress()).hasCopy(m_req.getSrcid()))) {
 				r_fsm_state = FsmState.FSM_INVAL;
@@ -249,6 +285,9 @@ public class MemWtiController implements MemController {
 			}
 			break;
 		case FSM_RSP_WRITE:
+			if (!p_out_rsp.canPush(1)) {
+				break;
+			}
 			sendResponse(m_req.getAddress(), m_req.getSrcid(), cmd_t.RSP_WRITE_WORD, null);
 			r_fsm_state = FsmState.FSM_IDLE;
 			break;
@@ -257,11 +296,24 @@ public class MemWtiController implements MemController {
 			assert (false);
 			break;
 		} // end switch(r_fsm_state)
-		System.out.println(m_name + " next state: " + r_fsm_state);
+		if (m_tracer.debug()) m_tracer.value(" next state: ", r_fsm_state);
 
 		m_cycle++;
 	}
 
+	/**
+	 * The controller is idle when it waits for a direct request or for invalidation responses,
+	 * and none is available.
+	 */
+	public boolean isIdle() {
+		return (r_fsm_state == FsmState.FSM_IDLE && p_in_req.empty(p_in_req_port) && p_in_rsp.empty(p_in_rsp_port))
+				|| (r_fsm_state == FsmState.FSM_INVAL_WAIT && p_in_rsp.empty(p_in_rsp_port));
+	}
+
+	public void skipCycles(int nbCycles) {
+		m_cycle += nbCycles;
+	}
+
 	public int getSrcid() {
 		return m_srcid;
 	}
@@ -0,0 +1,176 @@
+package model;
+
+/**
+ * Table of the messages held by a channel, stored as a structure of arrays: a message is an int handle
+ * indexing parallel primitive arrays which hold the header fields used by the channel (routing fields,
+ * command, traffic class, size and cycles). The queues of the channel only contain handles, so that routing,
+ * arbitration and statistics read contiguous primitive arrays instead of following a reference per request.
+ * The Request object of each message is kept in a column of the table, and is only read by the modules
+ * reading the channel.
+ * Handles of removed messages are reused; the arrays double their size when the table is full.
+ * @author QLM
+ *
+ */
+final class MessageTable {
+
+	private static final Request.cmd_t [] cmds = Request.cmd_t.values();
+
+	private long [] m_address;
+	private int [] m_srcid;
+	private int [] m_tgtid;
+	private byte [] m_cmd; // ordinal of the command
+	private byte [] m_cls;
+	private int [] m_nwords;
+	private int [] m_latency;
+	private int [] m_push_cycle;
+	private int [] m_delivery_cycle;
+	private Request [] m_req;
+
+	private int [] m_free;
+	private int m_nb_free;
+	private int m_nb_used; // handles lower than m_nb_used have been used at least once
+
+	MessageTable() {
+		allocate(16);
+		m_nb_free = 0;
+		m_nb_used = 0;
+	}
+
+	private void allocate(int capacity) {
+		m_address = new long[capacity];
+		m_srcid = new int[capacity];
+		m_tgtid = new int[capacity];
+		m_cmd = new byte[capacity];
+		m_cls = new byte[capacity];
+		m_nwords = new int[capacity];
+		m_latency = new int[capacity];
+		m_push_cycle = new int[capacity];
+		m_delivery_cycle = new int[capacity];
+		m_req = new Request[capacity];
+		m_free = new int[capacity];
+	}
+
+	private void grow() {
+		int n = m_req.length;
+		long [] address = m_address;
+		int [] srcid = m_srcid;
+		int [] tgtid = m_tgtid;
+		byte [] cmd = m_cmd;
+		byte [] cls = m_cls;
+		int [] nwords = m_nwords;
+		int [] latency = m_latency;
+		int [] pushCycle = m_push_cycle;
+		int [] deliveryCycle = m_delivery_cycle;
+		Request [] req = m_req;
+		allocate(2 * n);
+		System.arraycopy(address, 0, m_address, 0, n);
+		System.arraycopy(srcid, 0, m_srcid, 0, n);
+		System.arraycopy(tgtid, 0, m_tgtid, 0, n);
+		System.arraycopy(cmd, 0, m_cmd, 0, n);
+		System.arraycopy(cls, 0, m_cls, 0, n);
+		System.arraycopy(nwords, 0, m_nwords, 0, n);
+		System.arraycopy(latency, 0, m_latency, 0, n);
+		System.arraycopy(pushCycle, 0, m_push_cycle, 0, n);
+		System.arraycopy(deliveryCycle, 0, m_delivery_cycle, 0, n);
+		System.arraycopy(req, 0, m_req, 0, n);
+		// m_free is empty when the table grows
+	}
+
+	/**
+	 * Adds a message to the table
+	 * @param req : the request of the message, whose header fields are copied
+	 * @param cls : traffic class of the message
+	 * @param latency : number of cycles the message spends in the channel
+	 * @param pushCycle : cycle at which the message was pushed in the channel
+	 * @return the handle of the message
+	 */
+	int add(Request req, int cls, int latency, int pushCycle) {
+		int msg;
+		if (m_nb_free > 0) {
+			m_nb_free--;
+			msg = m_free[m_nb_free];
+		}
+		else {
+			if (m_nb_used == m_req.length) {
+				grow();
+			}
+			msg = m_nb_used;
+			m_nb_used++;
+		}
+		m_address[msg] = req.getAddress();
+		m_srcid[msg] = req.getSrcid();
+		m_tgtid[msg] = req.getTgtid();
+		m_cmd[msg] = (byte) req.getCmd().ordinal();
+		m_cls[msg] = (byte) cls;
+		m_nwords[msg] = req.getNwords();
+		m_latency[msg] = latency;
+		m_push_cycle[msg] = pushCycle;
+		m_delivery_cycle[msg] = pushCycle;
+		m_req[msg] = req;
+		return msg;
+	}
+
+	/**
+	 * Removes a message from the table; its handle can be returned by a next call to add()
+	 */
+	void remove(int msg) {
+		assert (m_req[msg] != null);
+		m_req[msg] = null;
+		m_free[m_nb_free] = msg;
+		m_nb_free++;
+	}
+
+	/**
+	 * @return the number of messages in the table
+	 */
+	int size() {
+		return m_nb_used - m_nb_free;
+	}
+
+	Request request(int msg) {
+		return m_req[msg];
+	}
+
+	long address(int msg) {
+		return m_address[msg];
+	}
+
+	int srcid(int msg) {
+		return m_srcid[msg];
+	}
+
+	int tgtid(int msg) {
+		return m_tgtid[msg];
+	}
+
+	Request.cmd_t cmd(int msg) {
+		return cmds[m_cmd[msg]];
+	}
+
+	int cls(int msg) {
+		return m_cls[msg];
+	}
+
+	int nwords(int msg) {
+		return m_nwords[msg];
+	}
+
+	int latency(int msg) {
+		return m_latency[msg];
+	}
+
+	int pushCycle(int msg) {
+		return m_push_cycle[msg];
+	}
+
+	/**
+	 * @return the cycle at the end of which the message is delivered, or from which it can leave its current buffer
+	 */
+	int deliveryCycle(int msg) {
+		return m_delivery_cycle[msg];
+	}
+
+	void setDeliveryCycle(int msg, int cycle) {
+		m_delivery_cycle[msg] = cycle;
+	}
+}
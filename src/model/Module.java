@@ -14,4 +14,17 @@ public interface Module {
 	
 	public void simulate1Cycle();
 	
+	/**
+	 * @return true if simulating a cycle would only increment the cycle counter of the module,
+	 *         i.e. the module waits for a request or a response and none is available on its input ports
+	 */
+	public boolean isIdle();
+	
+	/**
+	 * Advances the module by several cycles during which it is idle.
+	 * Must be called only for cycles during which isIdle() returned true.
+	 * @param nbCycles number of cycles to skip
+	 */
+	public void skipCycles(int nbCycles);
+	
 }
@@ -0,0 +1,362 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Channel modeling a network-on-chip instead of an ideal crossbar. The modules use it exactly as a Channel,
+ * and the requests are routed to the same output ports; only the transport of the requests differs.
+ * 
+ * Each module connected to the channel (as a writer or as a reader) is attached to a node of the network
+ * with setNode(), the node being identified by the srcid of the module. A pushed request is injected in the
+ * router of the node of its srcid, crosses routers until the router of the node of its tgtid, and is then
+ * ejected to the output port of its target. Each router has an input buffer per input port; the buffers of
+ * the links between routers hold at most bufferSize requests, and a request only crosses a link when there
+ * is room in the buffer at its end. Each output port of a router sends at most one request per cycle, chosen
+ * by an Arbiter among the inputs whose first request is ready and goes to this output; an input sends at most
+ * one request per cycle. Crossing a router and its output link takes hopLatency cycles. Requests are not
+ * split into flits: the bandwidth settings of Channel are not used, and neither is the latency drawn for the
+ * requests, the delay of a request only depending on its path and on the contention.
+ * 
+ * In the ring, injected requests need two free places in the next buffer (bubble flow control), so that the
+ * ring cannot deadlock. The mesh uses XY routing, which is deadlock-free; when the last row of the mesh is
+ * incomplete, requests whose XY path would leave the mesh are routed YX.
+ * @author QLM
+ */
+public class NocChannel extends Channel {
+
+	private static final int local = 0;
+	// output ports of the mesh routers
+	private static final int east = 1;
+	private static final int west = 2;
+	private static final int north = 3;
+	private static final int south = 4;
+	// output ports of the ring routers
+	private static final int next = 1;
+	private static final int prev = 2;
+
+	/**
+	 * A router; its output ports are either connected to an input port of another router,
+	 * or to a node, in which case requests leaving by this port are ejected.
+	 */
+	private static class Router {
+		int m_node; // node of the router (mesh and ring)
+		HandleQueue [] m_in;
+		boolean [] m_bounded; // true for the inputs connected to a link
+		Router [] m_out_router;
+		int [] m_out_port;
+		Arbiter [] m_arbiters;
+		int [] m_wanted; // output wanted by the first request of each input in the current cycle, or -1
+		List<Request> m_heads;
+
+		Router(int node, int nbPorts, ArbitrationPolicy policy) {
+			m_node = node;
+			m_in = new HandleQueue[nbPorts];
+			m_bounded = new boolean[nbPorts];
+			m_out_router = new Router[nbPorts];
+			m_out_port = new int[nbPorts];
+			m_arbiters = new Arbiter[nbPorts];
+			m_wanted = new int[nbPorts];
+			m_heads = new ArrayList<Request>(nbPorts);
+			for (int i = 0; i < nbPorts; i++) {
+				m_in[i] = new HandleQueue();
+				m_arbiters[i] = policy.newArbiter();
+				m_heads.add(null);
+			}
+		}
+
+		void connect(int port, Router r, int inPort) {
+			m_out_router[port] = r;
+			m_out_port[port] = inPort;
+			r.m_bounded[inPort] = true;
+		}
+	}
+
+	private NocTopology m_topology;
+	private int m_nb_nodes;
+	private int m_width;
+	private ArbitrationPolicy m_policy = ArbitrationPolicy.ROUND_ROBIN;
+	private Router [] m_routers;
+	private int [] m_id2node = new int[0];
+
+	private int m_hop_latency = 1;
+	private int m_buffer_size = 4;
+
+	private MessageTable m_table;
+	private TimingWheel m_ejected;
+	private int m_nb_in_network = 0;
+
+	/**
+	 * @param name : name of the channel
+	 * @param nbOutputs : number of modules connected to the output of the channel
+	 * @param addressRouting : selection of the output port, as for a Channel
+	 * @param topology : topology of the network
+	 * @param nbNodes : number of nodes of the network; a mesh is as square as possible (see setMeshWidth())
+	 */
+	public NocChannel(String name, int nbOutputs, boolean addressRouting, NocTopology topology, int nbNodes) {
+		super(name, nbOutputs, addressRouting);
+		assert (nbNodes > 0);
+		m_topology = topology;
+		m_nb_nodes = nbNodes;
+		m_width = (int) Math.ceil(Math.sqrt(nbNodes));
+		m_table = getTable();
+		m_ejected = new TimingWheel(m_table);
+		buildRouters();
+	}
+
+	/**
+	 * Sets the number of routers in a row of the mesh. Must be called before any request is pushed.
+	 */
+	public void setMeshWidth(int width) {
+		assert (m_topology == NocTopology.MESH && width > 0 && m_nb_in_network == 0);
+		m_width = Math.min(width, m_nb_nodes);
+		buildRouters();
+	}
+
+	/**
+	 * Sets the arbitration policy of the output ports of the routers. Must be called before any request is pushed.
+	 */
+	public void setArbitrationPolicy(ArbitrationPolicy policy) {
+		assert (m_nb_in_network == 0);
+		m_policy = policy;
+		buildRouters();
+	}
+
+	/**
+	 * @param hopLatency : number of cycles to cross a router and its output link (default: 1)
+	 */
+	public void setHopLatency(int hopLatency) {
+		assert (hopLatency > 0);
+		m_hop_latency = hopLatency;
+	}
+
+	/**
+	 * @param bufferSize : maximum number of requests in the buffer at the end of a link (default: 4)
+	 */
+	public void setBufferSize(int bufferSize) {
+		assert (bufferSize >= 2);
+		m_buffer_size = bufferSize;
+	}
+
+	/**
+	 * Attaches the module of srcid id to a node of the network; a srcid can only be attached to a single node
+	 */
+	public void setNode(int id, int node) {
+		assert (id >= 0 && node >= 0 && node < m_nb_nodes);
+		if (id >= m_id2node.length) {
+			int [] nodes = new int[Math.max(id + 1, 2 * m_id2node.length)];
+			Arrays.fill(nodes, -1);
+			System.arraycopy(m_id2node, 0, nodes, 0, m_id2node.length);
+			m_id2node = nodes;
+		}
+		assert (m_id2node[id] == -1 || m_id2node[id] == node) : "srcid " + id + " is already attached to node "
+				+ m_id2node[id];
+		m_id2node[id] = node;
+	}
+
+	public NocTopology getTopology() {
+		return m_topology;
+	}
+
+	private int nodeOf(int id) {
+		assert (id < m_id2node.length && m_id2node[id] != -1);
+		return m_id2node[id];
+	}
+
+	private boolean exists(int x, int y) {
+		return x >= 0 && x < m_width && y >= 0 && y * m_width + x < m_nb_nodes;
+	}
+
+	private void buildRouters() {
+		switch (m_topology) {
+		case MESH:
+			m_routers = new Router[m_nb_nodes];
+			for (int n = 0; n < m_nb_nodes; n++) {
+				m_routers[n] = new Router(n, 5, m_policy);
+			}
+			for (int n = 0; n < m_nb_nodes; n++) {
+				int x = n % m_width;
+				int y = n / m_width;
+				if (exists(x + 1, y)) {
+					m_routers[n].connect(east, m_routers[n + 1], west);
+				}
+				if (exists(x - 1, y)) {
+					m_routers[n].connect(west, m_routers[n - 1], east);
+				}
+				if (exists(x, y + 1)) {
+					m_routers[n].connect(north, m_routers[n + m_width], south);
+				}
+				if (exists(x, y - 1)) {
+					m_routers[n].connect(south, m_routers[n - m_width], north);
+				}
+			}
+			break;
+		case RING:
+			m_routers = new Router[m_nb_nodes];
+			for (int n = 0; n < m_nb_nodes; n++) {
+				m_routers[n] = new Router(n, 3, m_policy);
+			}
+			if (m_nb_nodes > 1) {
+				for (int n = 0; n < m_nb_nodes; n++) {
+					m_routers[n].connect(next, m_routers[(n + 1) % m_nb_nodes], prev);
+					m_routers[n].connect(prev, m_routers[(n + m_nb_nodes - 1) % m_nb_nodes], next);
+				}
+			}
+			break;
+		case CROSSBAR:
+			// a single router, whose port i is both the injection and the ejection port of node i
+			m_routers = new Router[1];
+			m_routers[0] = new Router(-1, m_nb_nodes, m_policy);
+			break;
+		}
+	}
+
+	/**
+	 * @return the output port of router r towards node dst
+	 */
+	private int route(Router r, int dst) {
+		switch (m_topology) {
+		case MESH:
+			if (dst == r.m_node) {
+				return local;
+			}
+			int x = r.m_node % m_width;
+			int y = r.m_node / m_width;
+			int dx = dst % m_width;
+			int dy = dst / m_width;
+			if (x != dx && exists(dx, y)) {
+				return dx > x ? east : west;
+			}
+			if (y != dy) {
+				return dy > y ? north : south;
+			}
+			return dx > x ? east : west;
+		case RING:
+			if (dst == r.m_node) {
+				return local;
+			}
+			int dist = (dst - r.m_node + m_nb_nodes) % m_nb_nodes;
+			return dist <= m_nb_nodes / 2 ? next : prev;
+		case CROSSBAR:
+			return dst;
+		}
+		assert (false);
+		return -1;
+	}
+
+	/**
+	 * @return true if the first request of input in of router r can leave by the output out
+	 */
+	private boolean hasRoom(Router r, int in, int out) {
+		Router dst = r.m_out_router[out];
+		if (dst == null) {
+			return true;
+		}
+		int needed = (m_topology == NocTopology.RING && !r.m_bounded[in]) ? 2 : 1;
+		return m_buffer_size - dst.m_in[r.m_out_port[out]].size() >= needed;
+	}
+
+	void commitPushBack(Request req) {
+		// the delivery cycle of the message is the cycle from which it can leave its current buffer
+		int msg = addMessage(req, 0);
+		int node = nodeOf(m_table.srcid(msg));
+		if (m_topology == NocTopology.CROSSBAR) {
+			m_routers[0].m_in[node].add(msg);
+		}
+		else {
+			m_routers[node].m_in[local].add(msg);
+		}
+		m_nb_in_network++;
+	}
+
+	/**
+	 * Moves the requests in the network for one cycle
+	 */
+	private void routeRequests() {
+		int cycle = getCycle();
+		for (Router r : m_routers) {
+			int nbPorts = r.m_in.length;
+			boolean any = false;
+			for (int i = 0; i < nbPorts; i++) {
+				r.m_wanted[i] = -1;
+				if (!r.m_in[i].isEmpty()) {
+					int msg = r.m_in[i].get(0);
+					if (m_table.deliveryCycle(msg) <= cycle) {
+						r.m_wanted[i] = route(r, nodeOf(m_table.tgtid(msg)));
+						any = true;
+					}
+				}
+			}
+			if (!any) {
+				continue;
+			}
+			for (int o = 0; o < nbPorts; o++) {
+				boolean candidates = false;
+				for (int i = 0; i < nbPorts; i++) {
+					if (r.m_wanted[i] == o && hasRoom(r, i, o)) {
+						r.m_heads.set(i, m_table.request(r.m_in[i].get(0)));
+						candidates = true;
+					}
+					else {
+						r.m_heads.set(i, null);
+					}
+				}
+				if (!candidates) {
+					continue;
+				}
+				int i = r.m_arbiters[o].grant(r.m_heads);
+				int msg = r.m_in[i].get(0);
+				r.m_in[i].removeFirst();
+				r.m_wanted[i] = -1;
+				Router dst = r.m_out_router[o];
+				if (dst == null) {
+					m_ejected.add(msg, cycle, cycle + m_hop_latency - 1);
+				}
+				else {
+					m_table.setDeliveryCycle(msg, cycle + m_hop_latency);
+					dst.m_in[r.m_out_port[o]].add(msg);
+				}
+			}
+		}
+		int msg;
+		while ((msg = m_ejected.poll(cycle)) != -1) {
+			m_nb_in_network--;
+			deliver(msg);
+		}
+	}
+
+	public void simulate1Cycle() {
+		if (m_nb_in_network > 0) {
+			routeRequests();
+		}
+		super.simulate1Cycle();
+	}
+
+	int nbInTransit() {
+		return m_nb_in_network + super.nbInTransit();
+	}
+
+	/**
+	 * Requests in the network can move at each cycle, so that cycles are only skipped when the network is empty
+	 */
+	public int nextPopDelay() {
+		if (m_nb_in_network > 0) {
+			return 1;
+		}
+		return super.nextPopDelay();
+	}
+
+	public String toString() {
+		String res = super.toString();
+		for (Router r : m_routers) {
+			for (HandleQueue q : r.m_in) {
+				for (int i = 0; i < q.size(); i++) {
+					res += m_table.request(q.get(i));
+				}
+			}
+		}
+		res += m_ejected.toString(getCycle());
+		return res;
+	}
+}
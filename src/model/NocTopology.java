@@ -0,0 +1,15 @@
+package model;
+
+/**
+ * Topologies of the network-on-chip modeled by a NocChannel.
+ *  - MESH: a 2D mesh of routers, one per node, with dimension-ordered (XY) routing
+ *  - RING: a bidirectional ring of routers, one per node, each request taking the shortest direction
+ *  - CROSSBAR: a single router connecting all the nodes, where requests only contend for the output ports
+ * @author QLM
+ *
+ */
+public enum NocTopology {
+	MESH,
+	RING,
+	CROSSBAR,
+}
@@ -0,0 +1,46 @@
+package model;
+
+/**
+ * Not recently used replacement: a bit per way is set when the way is accessed, and when all the bits of a set are
+ * set, they are all cleared. The victim is the first candidate way whose bit is cleared, or the first candidate.
+ * @author QLM
+ *
+ */
+class NruReplacement implements Replacement {
+
+	private long [] r_used; // [set], a bit per way
+	private long m_all;
+
+	NruReplacement(int nsets, int nways) {
+		assert (nways <= 64);
+		r_used = new long[nsets];
+		m_all = nways == 64 ? -1L : (1L << nways) - 1;
+	}
+
+	public void reset() {
+		for (int set = 0; set < r_used.length; set++) {
+			r_used[set] = 0;
+		}
+	}
+
+	public void touch(int set, int way) {
+		r_used[set] |= 1L << way;
+		// if all lines are new, they all become old
+		if (r_used[set] == m_all) {
+			r_used[set] = 0;
+		}
+	}
+
+	public void fill(int set, int way) {
+		touch(set, way);
+	}
+
+	public void invalidate(int set, int way) {
+		r_used[set] &= ~(1L << way);
+	}
+
+	public int victim(int set, long candidates) {
+		long old = candidates & ~r_used[set];
+		return Long.numberOfTrailingZeros(old != 0 ? old : candidates);
+	}
+}
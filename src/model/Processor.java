@@ -1,9 +1,8 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import model.Request.cmd_t;
+import utils.Trace;
+import utils.Tracer;
 
 /**
  * This class implements a basic ISS only capable of issuing reads and writes
@@ -14,6 +13,7 @@ public class Processor implements Module {
 
 	private int m_id;
 	private String m_name;
+	private Tracer m_tracer;
 
 	private int r_nb_req;
 	private int r_nb_rsp;
@@ -21,55 +21,70 @@ public class Processor implements Module {
 
 	private Channel p_out_req;
 	private Channel p_in_rsp;
+	private int p_in_rsp_port;
 
 	public Processor(String name, int id, Channel req_from_iss, Channel rsp_to_iss) {
 		m_name = name;
+		m_tracer = Trace.getTracer(name);
 		m_id = id; // for a processor, the srcid is equal to the id
 		p_out_req = req_from_iss;
 		p_in_rsp = rsp_to_iss;
 		r_nb_req = 0;
 		r_nb_rsp = 0;
-		p_in_rsp.addTgtidTranslation(m_id, this); // Translation r_srcid (real unique srcid) to channel index
+		p_in_rsp_port = p_in_rsp.addTgtidTranslation(m_id, this); // Translation r_srcid (real unique srcid) to channel index
 	}
 
 	public void addRead(long addr) {
-		Request req = new Request(addr, m_id, m_id + L1MesiController.l1StartId, cmd_t.READ_WORD, r_cycle, 0, null,	0xF);
+		Request req = Request.obtain(addr, m_id, m_id + L1MesiController.l1StartId, cmd_t.READ_WORD, r_cycle, 0);
 		p_out_req.pushBack(req);
 		r_nb_req++;
 	}
 
+	/**
+	 * Adds the write of a 32-bit word: only the 32 low bits of data are written, and are read back sign-extended
+	 */
 	public void addWrite(long addr, long data) {
-		List<Long> l = new ArrayList<Long>();
-		l.add(data);
-		Request req = new Request(addr, m_id, m_id + L1MesiController.l1StartId, cmd_t.WRITE_WORD, r_cycle, 0, l, 0xF);
+		Request req = Request.obtainWord(addr, m_id, m_id + L1MesiController.l1StartId, cmd_t.WRITE_WORD, r_cycle, 0, (int) data, 0xF);
 		p_out_req.pushBack(req);
 		r_nb_req++;
 	}
 	public void addSync() {
 				
-		Request req = new Request(0, m_id, m_id + L1MesiController.l1StartId, cmd_t.SYNC, r_cycle, 0, null, 0xF);
+		Request req = Request.obtain(0, m_id, m_id + L1MesiController.l1StartId, cmd_t.SYNC, r_cycle, 0);
 		p_out_req.pushBack(req);
 		r_nb_req++;
 	}
 	void addNop() {
-		Request req = new Request(0, m_id, m_id + L1MesiController.l1StartId, cmd_t.NOP, r_cycle, 0, null, 0xF);
+		Request req = Request.obtain(0, m_id, m_id + L1MesiController.l1StartId, cmd_t.NOP, r_cycle, 0);
 		p_out_req.pushBack(req);
 		r_nb_req++;
 	}
 
 	public void simulate1Cycle() {
-		if (!p_in_rsp.empty(this)) {
-			Request r = p_in_rsp.front(this);
-			System.out.println(m_name + " received response: \n" + r);
-			p_in_rsp.popFront(this);
+		if (!p_in_rsp.empty(p_in_rsp_port)) {
+			Request r = p_in_rsp.front(p_in_rsp_port);
+			if (m_tracer.info()) r.trace(m_tracer, " received response: ");
+			p_in_rsp.popFront(p_in_rsp_port);
+			r.release();
 			r_nb_rsp++;
 		}
 		r_cycle++;
 	}
 
 	
+	public boolean isIdle() {
+		return p_in_rsp.empty(p_in_rsp_port);
+	}
+
+	public void skipCycles(int nbCycles) {
+		r_cycle += nbCycles;
+	}
+
+	/**
+	 * @return true if all the requests issued by the processor have been answered
+	 */
 	public boolean stopOk() {
-		return p_out_req.empty(this) && r_nb_rsp == r_nb_req;
+		return r_nb_rsp == r_nb_req;
 	}
 	
 	
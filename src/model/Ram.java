@@ -1,13 +1,14 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Vector;
 
+import utils.Trace;
+import utils.Tracer;
 import utils.Utile;
 
 /**
  * Simple class for a memory constituted of segments. It provides facilities to access data and metadata.
+ * Words are 32-bit, stored as int and read sign-extended, as in the L1 caches.
  * @author QLM
  *
  */
@@ -27,7 +28,7 @@ public class Ram {
 	private int m_nbseg;
 	
 	private Vector<Segment> m_seglist;
-	private Vector<long []> m_ram;
+	private Vector<int []> m_ram; // words of 32 bits
 	private long [] m_nbsets;
 	
 	private Vector<CopiesList []> r_copies;
@@ -35,8 +36,11 @@ public class Ram {
 	
 	private AddressMaskingTable m_y;
 	
+	private Tracer m_tracer;
+	
 	
 	public Ram(String name, int nwords, Vector<Segment> seglist) {
+		m_tracer = Trace.getTracer(name);
 		m_seglist = seglist;
 		m_words = nwords;
 		m_nbseg = seglist.size();
@@ -46,18 +50,18 @@ public class Ram {
 		assert (!seglist.isEmpty()) : "Ram error : no segment allocated";
 		
 		for (Segment seg : m_seglist) {
-			System.out.println(seg);
+			if (m_tracer.debug()) m_tracer.value("", seg.toString());
 		}
 		
 		// memory allocation
-		m_ram = new Vector<long []>();
+		m_ram = new Vector<int []>();
 		m_nbsets = new long[m_nbseg];
 		r_copies = new Vector<CopiesList []>();
 		r_state = new Vector<BlockState []>();
 		
 		int i = 0;
 		for (Segment seg : m_seglist) {
-			m_ram.add(new long[(seg.size() + 3) / 4]);
+			m_ram.add(new int[(seg.size() + 3) / 4]);
 			m_nbsets[i] = seg.size() >> (2 + Utile.log2(m_words));
 			r_copies.add(new CopiesList[(int) m_nbsets[i]]);
 			for (int j = 0; j < m_nbsets[i]; j++) {
@@ -108,7 +112,7 @@ public class Ram {
 	 */
 	BlockState state(long addr) {
 		long set = m_y.get(addr);
-		System.out.println("   addr : 0x" + Long.toHexString(addr) + " - set = " + set);
+		if (m_tracer.debug()) m_tracer.format("   addr : 0x%x - set = %d", addr, set);
 		for (int i = 0; i != m_nbseg; i++) {
 			if (m_seglist.get(i).contains(addr)) {
 				return r_state.get(i)[(int) (set - m_y.get(m_seglist.get(i).baseAddress()))];
@@ -152,7 +156,7 @@ public class Ram {
 				mask = Utile.be2mask(be);
 				old_val = m_ram.get(i)[index];
 				new_val = wdata;
-				m_ram.get(i)[index] = (old_val & ~mask) | (new_val & mask);
+				m_ram.get(i)[index] = (int) ((old_val & ~mask) | (new_val & mask));
 				return true;
 			}
 		}
@@ -160,18 +164,28 @@ public class Ram {
 	}
 	
 
+	/**
+	 * @return the index in the segment seg of the first word of the line containing the address addr,
+	 *         the segments being aligned on lines
+	 */
+	private int lineIndex(int seg, long addr) {
+		long line = addr & ~((long) m_words * 4 - 1);
+		return (int) ((line - m_seglist.get(seg).baseAddress()) >>> 2);
+	}
+
 	/**
 	 * Writes a full line into memory
 	 * @param addr The address of the line to update.
-	 * @param wdata List of values to write containing as many elements as words per line.
+	 * @param wdata Array of values to write containing as many elements as words per line.
 	 * @return true if the ram contains the address and the update is done, false otherwise.
 	 */
-	boolean writeLine(long addr, List<Long> wdata) {
+	boolean writeLine(long addr, long [] wdata) {
 		for (int i = 0; i != m_nbseg; i++) {
 			if (m_seglist.get(i).contains(addr)) {
-				int index = (int) ((addr - m_seglist.get(i).baseAddress()) / 4);
+				int index = lineIndex(i, addr);
+				int [] words = m_ram.get(i);
 				for (int word = 0; word < m_words; word++) {
-					m_ram.get(i)[index + word] = wdata.get(word);
+					words[index + word] = (int) wdata[word];
 				}
 				return true;
 			}
@@ -287,21 +301,23 @@ public class Ram {
 	}
 	
 	/**
+	 * Copies the words of the line containing the address addr into buf.
 	 * @param addr
-	 * @return A list of values corresponding to the words of the line containing the address addr.
+	 * @param buf Array of at least as many elements as words per line
+	 * @return true if the ram contains the address and buf is written, false otherwise.
 	 */
-	List<Long> getLine(long addr) {
-		List<Long> res = new ArrayList<Long>();
+	boolean getLine(long addr, long [] buf) {
 		for (int i = 0; i != m_nbseg; i++) {
 			if (m_seglist.get(i).contains(addr)) {
-				int index = (int) ((addr - m_seglist.get(i).baseAddress()) / 4);
+				int index = lineIndex(i, addr);
+				int [] words = m_ram.get(i);
 				for (int word = 0; word < m_words; word++) {
-					res.add(m_ram.get(i)[index + word]);
+					buf[word] = words[index + word];
 				}
-				return res;
+				return true;
 			}
 		}
-		return null;
+		return false;
 	}
 	
 }
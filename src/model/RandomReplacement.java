@@ -0,0 +1,50 @@
+package model;
+
+import utils.SplitRandom;
+
+/**
+ * Random replacement. The victim of a set is drawn when a line is allocated in the set, so that successive choices
+ * before the next allocation return the same way; if the drawn way is not a candidate, the next candidate way is
+ * taken.
+ * @author QLM
+ *
+ */
+class RandomReplacement implements Replacement {
+
+	private int m_ways;
+	private byte [] r_next; // [set], way drawn as the next victim
+	private SplitRandom m_random;
+	private long m_seed;
+
+	RandomReplacement(int nsets, int nways, long seed) {
+		assert (nways <= 64);
+		m_ways = nways;
+		m_seed = seed;
+		r_next = new byte[nsets];
+		reset();
+	}
+
+	public void reset() {
+		m_random = new SplitRandom(m_seed);
+		for (int set = 0; set < r_next.length; set++) {
+			r_next[set] = (byte) m_random.nextInt(m_ways);
+		}
+	}
+
+	public void touch(int set, int way) {
+	}
+
+	public void fill(int set, int way) {
+		r_next[set] = (byte) m_random.nextInt(m_ways);
+	}
+
+	public void invalidate(int set, int way) {
+	}
+
+	public int victim(int set, long candidates) {
+		int next = r_next[set];
+		// rotates the candidates so that the drawn way is bit 0
+		long rotated = Long.rotateRight(candidates, next);
+		return (next + Long.numberOfTrailingZeros(rotated)) % 64;
+	}
+}
@@ -0,0 +1,37 @@
+package model;
+
+/**
+ * Replacement state of the sets of a cache, choosing the way in which a line is allocated when its set has no
+ * empty way. An object belongs to a single cache; its state is allocated when it is built, and its methods do
+ * not allocate.
+ * The ways of a set are given as bit masks, so that a set has at most 64 ways.
+ * @author QLM
+ *
+ */
+interface Replacement {
+
+	void reset();
+
+	/**
+	 * Records a hit (read or write) on the line of a way
+	 */
+	void touch(int set, int way);
+
+	/**
+	 * Records the allocation of a line in a way
+	 */
+	void fill(int set, int way);
+
+	/**
+	 * Records the invalidation of the line of a way
+	 */
+	void invalidate(int set, int way);
+
+	/**
+	 * Chooses the way to evict. The choice only depends on the state of the set, so that two calls with no
+	 * update in between return the same way.
+	 * @param candidates : bit mask of the ways which can be evicted, not empty
+	 * @return the way to evict
+	 */
+	int victim(int set, long candidates);
+}
@@ -0,0 +1,67 @@
+package model;
+
+/**
+ * Replacement policies available for the L1 caches, each value building the replacement state of a cache.
+ * @author QLM
+ *
+ */
+public enum ReplacementPolicy {
+
+	/**
+	 * Not recently used: one bit per way, set on an access, all the bits being cleared when they are all set.
+	 */
+	NRU {
+		Replacement newReplacement(int nsets, int nways, long seed) {
+			return new NruReplacement(nsets, nways);
+		}
+	},
+
+	/**
+	 * True least recently used, with a timestamp per way.
+	 */
+	LRU {
+		Replacement newReplacement(int nsets, int nways, long seed) {
+			return new LruReplacement(nsets, nways);
+		}
+	},
+
+	/**
+	 * Tree pseudo-LRU: a binary tree of nways - 1 bits per set pointing to the least recently used half.
+	 */
+	TREE_PLRU {
+		Replacement newReplacement(int nsets, int nways, long seed) {
+			return new TreePlruReplacement(nsets, nways);
+		}
+	},
+
+	RANDOM {
+		Replacement newReplacement(int nsets, int nways, long seed) {
+			return new RandomReplacement(nsets, nways, seed);
+		}
+	},
+
+	/**
+	 * Static re-reference interval prediction, with 2 bits per way; lines are inserted with a long predicted
+	 * re-reference interval, so that lines which are never reused are evicted first.
+	 */
+	SRRIP {
+		Replacement newReplacement(int nsets, int nways, long seed) {
+			return new RripReplacement(nsets, nways, false, seed);
+		}
+	},
+
+	/**
+	 * Bimodal re-reference interval prediction: as SRRIP, but lines are mostly inserted with a distant
+	 * re-reference interval, which resists to the thrashing of a working set larger than the cache.
+	 */
+	BRRIP {
+		Replacement newReplacement(int nsets, int nways, long seed) {
+			return new RripReplacement(nsets, nways, true, seed);
+		}
+	};
+
+	/**
+	 * @param seed : seed of the random choices of the policy, if any
+	 */
+	abstract Replacement newReplacement(int nsets, int nways, long seed);
+}
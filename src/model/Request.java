@@ -1,12 +1,11 @@
 package model;
 
-import java.util.ArrayList;
-import java.util.List;
-
-import utils.Utile;
+import utils.Tracer;
 
 /**
- * Class modeling a request. It contains data and metadata: cycles at the which the request was sent and received
+ * Class modeling a request. It contains data and metadata: cycles at the which the request was sent and received.
+ * Requests are recycled: they are obtained from a per-thread RequestPool, and given back with release() by the
+ * module consuming them. The data words are held in a primitive array which is kept when the request is recycled.
  * @author QLM
  *
  */
@@ -51,64 +50,145 @@ public class Request {
 	// unused if read request
 	// read data if read response
 	// unsused if write response
-	List<Long> r_data;
+	private long [] r_data; // sized to the largest payload carried by the request object, r_nwords words used
+	private int r_nwords;
+	private static final long [] noData = new long[0];
 	private int r_be;
 
-	private int r_cycle;
-	private int r_start_cycle;
-	private int r_end_cycle;
+	private int r_max_latency;
+	private int r_start_cycle; // creation cycle, or first read by the L1 cache for processor requests (chronograms)
+	private int r_end_cycle; // cycle at which the request is consumed, i.e. first read by its consumer
+	
+	private int r_created_cycle;
+	int r_push_cycle; // set by the channel transporting the request
+	int r_ready_cycle; // id., cycle from which the request can be read at its output port
+	
+	// lifecycle of the request answered by this one, for responses
+	private cmd_t r_cause_cmd;
+	private int r_cause_created_cycle;
+	private int r_cause_push_cycle;
+	private int r_cause_ready_cycle;
+	private int r_cause_end_cycle;
 	
 	boolean r_start_cycle_set = false;
 	boolean addedToFinishedReqs = false;
+	
+	private boolean r_retained = false;
+	private boolean r_pooled = false;
+	boolean r_notify_pending = false; // the listeners of the channel will be notified at the end of the cycle
+	boolean r_release_pending = false;
 
-	public Request() {
-		r_address = 0x0;
-		r_srcid = 0;
-		r_tgtid = 0;
-		r_cmd = cmd_t.NOP;
-		r_be = 0;
-		r_cycle = 0;
-		r_start_cycle = 0;
-		r_end_cycle = 0;
-		r_data = null;
+	/**
+	 * Requests are only created by the RequestPool; use the obtain() methods.
+	 */
+	Request() {
+		r_data = noData;
 	}
 
-	public Request(long address, int srcid, int tgtid, cmd_t cmd, int start_cycle, int max_duration, List<Long> data, int be) {
+	private void init(long address, int srcid, int tgtid, cmd_t cmd, int start_cycle, int max_duration, int be) {
+		assert (r_pooled || r_cmd == null);
 		r_address = address;
 		r_srcid = srcid;
 		r_tgtid = tgtid;
 		r_cmd = cmd;
 		r_be = be;
-		r_cycle = start_cycle;
-		this.r_start_cycle = start_cycle;
-		initData(data);
-		
-		r_end_cycle = start_cycle + Utile.randInt(0, max_duration);
+		r_max_latency = max_duration;
+		r_start_cycle = start_cycle;
+		r_end_cycle = start_cycle;
+		r_nwords = 0;
+		r_created_cycle = start_cycle;
+		r_push_cycle = 0;
+		r_ready_cycle = 0;
+		r_cause_cmd = null;
+		r_start_cycle_set = false;
+		addedToFinishedReqs = false;
+		r_retained = false;
+		r_pooled = false;
+		r_notify_pending = false;
+		r_release_pending = false;
 	}
 
-	public Request(long address, int srcid, int tgtid, cmd_t cmd, int start_cycle, int max_duration) {
-		r_address = address;
-		r_srcid = srcid;
-		r_tgtid = tgtid;
-		r_cmd = cmd;
-		r_be = 0xF;
-		r_cycle = start_cycle;
-		r_start_cycle = start_cycle;
-		initData(null);
+	private void initData(long [] data, int nwords) {
+		if (data == null) {
+			return;
+		}
+		if (r_data.length < nwords) {
+			r_data = new long[nwords];
+		}
+		System.arraycopy(data, 0, r_data, 0, nwords);
+		r_nwords = nwords;
+	}
 
-		r_end_cycle = start_cycle + Utile.randInt(0, max_duration);
+	/**
+	 * @return a request without data
+	 */
+	public static Request obtain(long address, int srcid, int tgtid, cmd_t cmd, int start_cycle, int max_duration) {
+		Request req = RequestPool.get();
+		req.init(address, srcid, tgtid, cmd, start_cycle, max_duration, 0xF);
+		return req;
 	}
 
-	private void initData(List<Long> data) {
-		if (data != null) {
-			r_data = new ArrayList<Long>();
+	/**
+	 * @return a request carrying a copy of the nwords first words of data, or no data if data is null
+	 */
+	public static Request obtain(long address, int srcid, int tgtid, cmd_t cmd, int start_cycle, int max_duration,
+			long [] data, int nwords, int be) {
+		Request req = RequestPool.get();
+		req.init(address, srcid, tgtid, cmd, start_cycle, max_duration, be);
+		req.initData(data, nwords);
+		return req;
+	}
 
-			for (int i = 0; i < data.size(); i++) {
-				r_data.add(data.get(i));
-			}
+	/**
+	 * @return a request carrying a single data word
+	 */
+	public static Request obtainWord(long address, int srcid, int tgtid, cmd_t cmd, int start_cycle, int max_duration,
+			long word, int be) {
+		Request req = RequestPool.get();
+		req.init(address, srcid, tgtid, cmd, start_cycle, max_duration, be);
+		if (req.r_data.length == 0) {
+			req.r_data = new long[1];
 		}
-		else {
-			r_data = null;
+		req.r_data[0] = word;
+		req.r_nwords = 1;
+		return req;
+	}
+
+	/**
+	 * Marks the request as kept after its consumption, e.g. by a RequestListener storing it:
+	 * the request is then not recycled until unretain() is called.
+	 */
+	public void retain() {
+		r_retained = true;
+	}
+
+	/**
+	 * Called by the holder of a retained request once it does not keep it any more: the request is given back
+	 * to the pool of the current thread if it has already been released, or will be at its release otherwise.
+	 */
+	public void unretain() {
+		assert (r_retained);
+		r_retained = false;
+		if (r_pooled) {
+			RequestPool.put(this);
+		}
+	}
+
+	/**
+	 * Gives the request back to the pool of the current thread. Must be called by the last module using the request,
+	 * once it does not use it any more; the request is only recycled if it has not been retained.
+	 * When the notification of its consumption is pending (parallel simulation), the request is given back
+	 * once the listeners have been notified.
+	 */
+	public void release() {
+		assert (!r_pooled);
+		if (r_notify_pending) {
+			r_release_pending = true;
+			return;
+		}
+		r_pooled = true;
+		if (!r_retained) {
+			RequestPool.put(this);
 		}
 	}
 
@@ -133,35 +213,101 @@ public class Request {
 	}
 
 	public int getNwords() {
-		if (r_data == null) {
-			return 0;
-		}
-		else {
-			return r_data.size();
-		}
+		return r_nwords;
 	}
 
-	List<Long> getData() {
+	/**
+	 * @return the data of the request, only the getNwords() first words being valid; the array must not be modified
+	 */
+	long [] getData() {
 		return r_data;
 	}
+
+	public long getWord(int i) {
+		assert (i < r_nwords);
+		return r_data[i];
+	}
 	
 	public void updateTgtid(int id) {
 		assert(r_tgtid == -1);
 		r_tgtid = id;
 	}
 
-	void simulate1Cycle() {
-		r_cycle++;
+	/**
+	 * @return the maximum number of cycles the request can spend in a channel
+	 */
+	int getMaxLatency() {
+		return r_max_latency;
 	}
 	
 	public int getStartCycle() {
 		return r_start_cycle;
 	}
 
+	/**
+	 * @return the cycle of the channel at which the request was pushed
+	 */
+	public int getPushCycle() {
+		return r_push_cycle;
+	}
+	
+	/**
+	 * @return the cycle at which the request was consumed, i.e. first read by the module it is sent to
+	 */
 	public int getEndCycle() {
 		return r_end_cycle;
 	}
 	
+	/**
+	 * @return the cycle at which the request was obtained by its producer
+	 */
+	public int getCreatedCycle() {
+		return r_created_cycle;
+	}
+	
+	/**
+	 * @return the cycle from which the request could be read at the output port of its channel
+	 */
+	public int getReadyCycle() {
+		return r_ready_cycle;
+	}
+	
+	/**
+	 * Records that this request is the response to req: the timestamps of req are copied,
+	 * so that they are still available once req is released.
+	 * Must be called by the producer of the response, after req has been consumed.
+	 */
+	public void answers(Request req) {
+		r_cause_cmd = req.r_cmd;
+		r_cause_created_cycle = req.r_created_cycle;
+		r_cause_push_cycle = req.r_push_cycle;
+		r_cause_ready_cycle = req.r_ready_cycle;
+		r_cause_end_cycle = req.r_end_cycle;
+	}
+	
+	/**
+	 * @return the command of the request answered by this one, or null if this request is not a response
+	 */
+	public cmd_t getCauseCmd() {
+		return r_cause_cmd;
+	}
+	
+	public int getCauseCreatedCycle() {
+		return r_cause_created_cycle;
+	}
+	
+	public int getCausePushCycle() {
+		return r_cause_push_cycle;
+	}
+	
+	public int getCauseReadyCycle() {
+		return r_cause_ready_cycle;
+	}
+	
+	public int getCauseEndCycle() {
+		return r_cause_end_cycle;
+	}
+	
 	public void setStartCycle(int cycle) {
 		// no assert because this function can be called twice
 		if (!r_start_cycle_set) {
@@ -176,10 +322,6 @@ public class Request {
 		addedToFinishedReqs = true;
 	}
 	
-	boolean toPop() {
-		return (r_cycle >= r_end_cycle);
-	}
-
 	public String toString() {
 		String res;
 		res = "--- Request ---\n";
@@ -187,11 +329,11 @@ public class Request {
 		res += "    srcid: " + r_srcid + "\n";
 		res += "    tgtid: " + r_tgtid + "\n";
 		res += "    cmd: " + r_cmd + "\n";
-		if (r_data != null) {
-			res += "    ndata_words: " + r_data.size() + "\n";
-			res += "    data: [ " + r_data.get(0);
-			for (int i = 1; i < r_data.size(); i++) {
-				res += ", " + r_data.get(i);
+		if (r_nwords > 0) {
+			res += "    ndata_words: " + r_nwords + "\n";
+			res += "    data: [ " + r_data[0];
+			for (int i = 1; i < r_nwords; i++) {
+				res += ", " + r_data[i];
 			}
 			res += " ]\n";
 		}
@@ -202,17 +344,24 @@ public class Request {
 		return res;
 	}
 	
+	/**
+	 * Traces this request, with the same layout as toString()
+	 */
+	public void trace(Tracer tracer, String label) {
+		tracer.request(label, r_address, r_srcid, r_tgtid, r_cmd, r_data, r_nwords);
+	}
+	
 	public String toStringBis() {
 		String res;
 		res = "{ @ 0x" + Long.toHexString(r_address);
 		res += " / srcid: " + r_srcid;
 		res += " / tgtid: " + r_tgtid;
 		res += " / " + r_cmd + "\n";
-		if (r_data != null) {
-			res += " / ndata_words: " + r_data.size();
-			res += " / data: [ " + r_data.get(0);
-			for (int i = 1; i < r_data.size(); i++) {
-				res += ", " + r_data.get(i);
+		if (r_nwords > 0) {
+			res += " / ndata_words: " + r_nwords;
+			res += " / data: [ " + r_data[0];
+			for (int i = 1; i < r_nwords; i++) {
+				res += ", " + r_data[i];
 			}
 			res += " ] }";
 		}
@@ -0,0 +1,159 @@
+package model;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Listener keeping the finished requests of a group of channels, and forwarding them to other listeners.
+ * The requests kept depend on the retention:
+ *  - ALL: all the requests (default, needed by the graphical interface)
+ *  - NONE: no request
+ *  - LAST_N_CYCLES: the requests finished during the last N cycles; the older ones are recycled
+ *  - DISK: no request is kept in memory; each request is written as a line of a text file
+ * @author QLM
+ *
+ */
+public class RequestHistory implements RequestListener {
+
+	public enum Retention {
+		ALL, NONE, LAST_N_CYCLES, DISK,
+	}
+
+	private Retention m_retention = Retention.ALL;
+	private int m_nb_cycles = 0;
+	private PrintWriter m_out = null;
+
+	private List<Request> m_reqs = new ArrayList<Request>();
+	private int m_first = 0; // index in m_reqs of the first request kept, the previous ones being pruned
+	private List<RequestListener> m_listeners = new ArrayList<RequestListener>();
+	private int m_nb_reqs = 0;
+
+	/**
+	 * Keeps all the requests (ALL) or none of them (NONE)
+	 */
+	public void setRetention(Retention retention) {
+		assert (retention == Retention.ALL || retention == Retention.NONE);
+		close();
+		m_retention = retention;
+		if (retention == Retention.NONE) {
+			dropRequests();
+		}
+	}
+
+	/**
+	 * Keeps the requests finished during the last nbCycles cycles
+	 */
+	public void setLastCycles(int nbCycles) {
+		close();
+		m_retention = Retention.LAST_N_CYCLES;
+		m_nb_cycles = nbCycles;
+	}
+
+	/**
+	 * Writes the requests to the file fileName instead of keeping them
+	 */
+	public void setFile(String fileName) throws IOException {
+		close();
+		m_retention = Retention.DISK;
+		dropRequests();
+		m_out = new PrintWriter(new FileWriter(fileName));
+		m_out.println("# cmd srcid tgtid address start_cycle end_cycle");
+	}
+
+	public Retention getRetention() {
+		return m_retention;
+	}
+
+	/**
+	 * Closes the file of the DISK retention, if any
+	 */
+	public void close() {
+		if (m_out != null) {
+			m_out.close();
+			m_out = null;
+		}
+	}
+
+	public void addListener(RequestListener l) {
+		m_listeners.add(l);
+	}
+
+	public void removeListener(RequestListener l) {
+		m_listeners.remove(l);
+	}
+
+	public void requestFinished(Request req) {
+		m_nb_reqs++;
+		for (RequestListener l : m_listeners) {
+			l.requestFinished(req);
+		}
+		switch (m_retention) {
+		case ALL:
+			req.retain();
+			m_reqs.add(req);
+			break;
+		case LAST_N_CYCLES:
+			req.retain();
+			m_reqs.add(req);
+			prune(req.getEndCycle() - m_nb_cycles);
+			break;
+		case DISK:
+			m_out.println(req.getCmd() + " " + req.getSrcid() + " " + req.getTgtid() + " 0x"
+					+ Long.toHexString(req.getAddress()) + " " + req.getStartCycle() + " " + req.getEndCycle());
+			break;
+		case NONE:
+			break;
+		}
+	}
+
+	/**
+	 * Removes all the requests kept, which can then be recycled
+	 */
+	private void dropRequests() {
+		for (int i = m_first; i < m_reqs.size(); i++) {
+			m_reqs.get(i).unretain();
+		}
+		m_reqs.clear();
+		m_first = 0;
+	}
+
+	/**
+	 * Removes the requests finished before the cycle minCycle, which are the first ones as the requests finish
+	 * in the order of their end cycles. The start of the kept requests moves forward, each request being
+	 * examined once, and the pruned requests are removed from the list by blocks when they are at least as
+	 * many as the kept ones, so that the amortized cost per request is constant.
+	 */
+	private void prune(int minCycle) {
+		while (m_first < m_reqs.size() && m_reqs.get(m_first).getEndCycle() < minCycle) {
+			m_reqs.get(m_first).unretain();
+			m_first++;
+		}
+		if (m_first > 0 && m_first >= m_reqs.size() - m_first) {
+			m_reqs.subList(0, m_first).clear();
+			m_first = 0;
+		}
+	}
+
+	/**
+	 * @return the requests kept, in the order in which they finished. The requests removed from the history
+	 *         (LAST_N_CYCLES) are recycled, so that the requests returned must not be used after the next
+	 *         simulated cycle with this retention.
+	 */
+	public List<Request> getRequests() {
+		if (m_first == 0) {
+			return Collections.unmodifiableList(m_reqs);
+		}
+		return Collections.unmodifiableList(m_reqs.subList(m_first, m_reqs.size()));
+	}
+
+	/**
+	 * @return the number of requests finished since the beginning of the simulation, whatever the retention
+	 */
+	public int getNbRequests() {
+		return m_nb_reqs;
+	}
+}
@@ -0,0 +1,17 @@
+package model;
+
+/**
+ * Receives the requests consumed in the channels it is registered to.
+ * A request is notified once, when its consumer reads it for the first time; the end cycle of the request
+ * is then set. When the modules are simulated in parallel, notifications are made at the end of the cycle,
+ * in the same order as in a sequential simulation.
+ * Requests are recycled once consumed: a listener keeping a reference to a request after the notification must
+ * call Request.retain(), and Request.unretain() once it drops the reference.
+ * @author QLM
+ *
+ */
+public interface RequestListener {
+
+	public void requestFinished(Request req);
+
+}
@@ -0,0 +1,53 @@
+package model;
+
+/**
+ * Pool of released requests, one per thread so that modules simulated in parallel allocate without synchronization.
+ * A request released on a thread can be obtained again on another one; each pool keeps at most maxSize requests,
+ * the other ones being left to the garbage collector.
+ * @author QLM
+ *
+ */
+final class RequestPool {
+
+	private static final int maxSize = 4096;
+
+	private static final ThreadLocal<RequestPool> pools = new ThreadLocal<RequestPool>() {
+		protected RequestPool initialValue() {
+			return new RequestPool();
+		}
+	};
+
+	private Request [] m_free = new Request[64];
+	private int m_size = 0;
+
+	private RequestPool() {
+	}
+
+	/**
+	 * @return a released request, or a new one if the pool of the thread is empty; the caller must initialize it
+	 */
+	static Request get() {
+		RequestPool pool = pools.get();
+		if (pool.m_size == 0) {
+			return new Request();
+		}
+		pool.m_size--;
+		Request req = pool.m_free[pool.m_size];
+		pool.m_free[pool.m_size] = null;
+		return req;
+	}
+
+	static void put(Request req) {
+		RequestPool pool = pools.get();
+		if (pool.m_size == pool.m_free.length) {
+			if (pool.m_size == maxSize) {
+				return;
+			}
+			Request [] free = new Request[2 * pool.m_size];
+			System.arraycopy(pool.m_free, 0, free, 0, pool.m_size);
+			pool.m_free = free;
+		}
+		pool.m_free[pool.m_size] = req;
+		pool.m_size++;
+	}
+}
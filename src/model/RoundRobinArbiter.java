@@ -0,0 +1,26 @@
+package model;
+
+import java.util.List;
+
+/**
+ * Grants the sources in turn, starting after the last source granted.
+ * @author QLM
+ *
+ */
+public class RoundRobinArbiter implements Arbiter {
+
+	private int m_last = -1;
+
+	public int grant(List<Request> heads) {
+		int n = heads.size();
+		for (int i = 1; i <= n; i++) {
+			int idx = (m_last + i) % n;
+			if (heads.get(idx) != null) {
+				m_last = idx;
+				return idx;
+			}
+		}
+		assert (false);
+		return -1;
+	}
+}
@@ -0,0 +1,78 @@
+package model;
+
+import utils.SplitRandom;
+
+/**
+ * Re-reference interval prediction replacement (Jaleel et al., ISCA 2010). Each way holds a 2-bit prediction of
+ * the interval before its next access: 0 on a hit, and on an allocation 2 for the static variant (SRRIP), or for
+ * the bimodal variant (BRRIP) 3 except once in 32 allocations. The victim is the first candidate way predicted at
+ * 3; if there is none, the predictions of the candidate ways are incremented until one reaches 3.
+ * @author QLM
+ *
+ */
+class RripReplacement implements Replacement {
+
+	private static final int distant = 3;
+	private static final int longInterval = 2;
+	private static final int bimodalThrottle = 32;
+
+	private int m_ways;
+	private byte [] r_rrpv; // [set][way]
+	private boolean m_bimodal;
+	private SplitRandom m_random;
+	private long m_seed;
+
+	RripReplacement(int nsets, int nways, boolean bimodal, long seed) {
+		assert (nways <= 64);
+		m_ways = nways;
+		m_bimodal = bimodal;
+		m_seed = seed;
+		r_rrpv = new byte[nsets * nways];
+		reset();
+	}
+
+	public void reset() {
+		for (int i = 0; i < r_rrpv.length; i++) {
+			r_rrpv[i] = distant;
+		}
+		m_random = new SplitRandom(m_seed);
+	}
+
+	public void touch(int set, int way) {
+		r_rrpv[set * m_ways + way] = 0;
+	}
+
+	public void fill(int set, int way) {
+		if (m_bimodal && m_random.nextInt(bimodalThrottle) != 0) {
+			r_rrpv[set * m_ways + way] = distant;
+		}
+		else {
+			r_rrpv[set * m_ways + way] = longInterval;
+		}
+	}
+
+	public void invalidate(int set, int way) {
+		r_rrpv[set * m_ways + way] = distant;
+	}
+
+	public int victim(int set, long candidates) {
+		int base = set * m_ways;
+		int max = -1;
+		int res = -1;
+		for (long c = candidates; c != 0; c &= c - 1) {
+			int way = Long.numberOfTrailingZeros(c);
+			if (r_rrpv[base + way] > max) {
+				max = r_rrpv[base + way];
+				res = way;
+			}
+		}
+		// ages the candidates at once as much as the repeated increments until one reaches the distant value
+		int age = distant - max;
+		if (age > 0) {
+			for (long c = candidates; c != 0; c &= c - 1) {
+				r_rrpv[base + Long.numberOfTrailingZeros(c)] += age;
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,98 @@
+package model;
+
+/**
+ * Immutable index of non-overlapping segments sorted by base address, used by the channels routing by address.
+ * Each segment is associated to an output port of the channel. Adding a segment returns a new index;
+ * looking up an address is a binary search on the base addresses, so that routing costs O(log S)
+ * for S segments and does not depend on any hash order.
+ * @author QLM
+ *
+ */
+class SegmentIndex {
+
+	static final SegmentIndex empty = new SegmentIndex(new long[0], new long[0], new Segment[0], new int[0]);
+
+	private final long [] m_bases;
+	private final long [] m_ends;
+	private final Segment [] m_segs;
+	private final int [] m_ports;
+
+	private SegmentIndex(long [] bases, long [] ends, Segment [] segs, int [] ports) {
+		m_bases = bases;
+		m_ends = ends;
+		m_segs = segs;
+		m_ports = ports;
+	}
+
+	/**
+	 * @return a new index containing the segments of this one and seg, routed to port
+	 */
+	SegmentIndex add(Segment seg, int port) {
+		int n = m_segs.length;
+		int pos = insertionPoint(seg.baseAddress());
+		assert (pos == n || !seg.isOverlapping(m_segs[pos])) : "Overlapping segments " + seg + " and " + m_segs[pos];
+		assert (pos == 0 || !seg.isOverlapping(m_segs[pos - 1])) : "Overlapping segments " + seg + " and " + m_segs[pos - 1];
+		long [] bases = new long[n + 1];
+		long [] ends = new long[n + 1];
+		Segment [] segs = new Segment[n + 1];
+		int [] ports = new int[n + 1];
+		System.arraycopy(m_bases, 0, bases, 0, pos);
+		System.arraycopy(m_ends, 0, ends, 0, pos);
+		System.arraycopy(m_segs, 0, segs, 0, pos);
+		System.arraycopy(m_ports, 0, ports, 0, pos);
+		bases[pos] = seg.baseAddress();
+		ends[pos] = seg.baseAddress() + seg.size();
+		segs[pos] = seg;
+		ports[pos] = port;
+		System.arraycopy(m_bases, pos, bases, pos + 1, n - pos);
+		System.arraycopy(m_ends, pos, ends, pos + 1, n - pos);
+		System.arraycopy(m_segs, pos, segs, pos + 1, n - pos);
+		System.arraycopy(m_ports, pos, ports, pos + 1, n - pos);
+		return new SegmentIndex(bases, ends, segs, ports);
+	}
+
+	/**
+	 * @return the number of segments whose base address is lower than or equal to addr
+	 */
+	private int insertionPoint(long addr) {
+		int lo = 0;
+		int hi = m_bases.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (m_bases[mid] <= addr) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * @return the position of the segment containing addr, or -1 if there is none
+	 */
+	private int find(long addr) {
+		int pos = insertionPoint(addr) - 1;
+		if (pos >= 0 && addr < m_ends[pos]) {
+			return pos;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the output port of the segment containing addr, or -1 if there is none
+	 */
+	int portOf(long addr) {
+		int pos = find(addr);
+		return pos == -1 ? -1 : m_ports[pos];
+	}
+
+	/**
+	 * @return the segment containing addr, or null if there is none
+	 */
+	Segment segmentOf(long addr) {
+		int pos = find(addr);
+		return pos == -1 ? null : m_segs[pos];
+	}
+}
@@ -0,0 +1,115 @@
+package model;
+
+/**
+ * Calendar queue of the messages in transit in a channel, indexed by delivery cycle.
+ * Each slot holds the handles of the messages delivered at the cycles congruent to its index, in push order;
+ * the delivery cycles are kept in the MessageTable of the channel.
+ * The number of slots is a power of 2 larger than the longest pending delay, and doubles when needed.
+ * Delivering the messages of a cycle only accesses the slot of this cycle.
+ * @author QLM
+ *
+ */
+class TimingWheel {
+
+	private MessageTable m_table;
+	private HandleQueue [] m_slots;
+	private int m_size;
+
+	TimingWheel(MessageTable table) {
+		m_table = table;
+		m_slots = newSlots(16);
+		m_size = 0;
+	}
+
+	private static HandleQueue [] newSlots(int nbSlots) {
+		HandleQueue [] slots = new HandleQueue[nbSlots];
+		for (int i = 0; i < nbSlots; i++) {
+			slots[i] = new HandleQueue();
+		}
+		return slots;
+	}
+
+	int size() {
+		return m_size;
+	}
+
+	boolean isEmpty() {
+		return m_size == 0;
+	}
+
+	/**
+	 * Adds a message to be delivered at the cycle deliveryCycle
+	 * @param currentCycle : cycle of the channel, lower than or equal to deliveryCycle
+	 */
+	void add(int msg, int currentCycle, int deliveryCycle) {
+		assert (deliveryCycle >= currentCycle);
+		if (deliveryCycle - currentCycle >= m_slots.length) {
+			grow(currentCycle, deliveryCycle - currentCycle + 1);
+		}
+		m_table.setDeliveryCycle(msg, deliveryCycle);
+		m_slots[deliveryCycle & (m_slots.length - 1)].add(msg);
+		m_size++;
+	}
+
+	private void grow(int currentCycle, int minSlots) {
+		int nbSlots = m_slots.length;
+		while (nbSlots < minSlots) {
+			nbSlots *= 2;
+		}
+		HandleQueue [] slots = newSlots(nbSlots);
+		// Slots are visited in delivery order so that the order of the messages of a cycle is kept
+		for (int c = currentCycle; c < currentCycle + m_slots.length; c++) {
+			HandleQueue q = m_slots[c & (m_slots.length - 1)];
+			for (int i = 0; i < q.size(); i++) {
+				int msg = q.get(i);
+				slots[m_table.deliveryCycle(msg) & (nbSlots - 1)].add(msg);
+			}
+		}
+		m_slots = slots;
+	}
+
+	/**
+	 * Removes and returns the first message to deliver at the cycle cycle
+	 * @return the handle of the message, or -1 if there is none
+	 */
+	int poll(int cycle) {
+		HandleQueue q = m_slots[cycle & (m_slots.length - 1)];
+		if (q.isEmpty()) {
+			return -1;
+		}
+		int msg = q.get(0);
+		assert (m_table.deliveryCycle(msg) == cycle);
+		q.removeFirst();
+		m_size--;
+		return msg;
+	}
+
+	/**
+	 * @return the first cycle greater than or equal to currentCycle at which a message is delivered,
+	 *         or -1 if the wheel is empty
+	 */
+	int nextDeliveryCycle(int currentCycle) {
+		if (m_size == 0) {
+			return -1;
+		}
+		for (int c = currentCycle; ; c++) {
+			if (!m_slots[c & (m_slots.length - 1)].isEmpty()) {
+				return c;
+			}
+		}
+	}
+
+	/**
+	 * @return the requests of the messages of the wheel, in delivery order
+	 */
+	String toString(int currentCycle) {
+		String res = "";
+		for (int c = currentCycle; c < currentCycle + m_slots.length; c++) {
+			HandleQueue q = m_slots[c & (m_slots.length - 1)];
+			for (int i = 0; i < q.size(); i++) {
+				res += m_table.request(q.get(i));
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,86 @@
+package model;
+
+/**
+ * Tree pseudo-LRU replacement: the ways of a set are the leaves of a binary tree whose nodes hold a bit pointing to
+ * the half least recently accessed (0 for the lower half, 1 for the upper half). An access makes the nodes on the
+ * path to the way point away from it, and the victim is found by following the bits from the root, taking the
+ * other half when the pointed one contains no candidate way.
+ * The nodes are numbered as in a heap, from 1 for the root; if the number of ways is not a power of 2, the tree
+ * has extra leaves which are never candidates.
+ * @author QLM
+ *
+ */
+class TreePlruReplacement implements Replacement {
+
+	private int m_leaves;
+	private long [] r_tree; // [set], bit i for node i
+
+	TreePlruReplacement(int nsets, int nways) {
+		assert (nways <= 64);
+		m_leaves = 1;
+		while (m_leaves < nways) {
+			m_leaves *= 2;
+		}
+		r_tree = new long[nsets];
+	}
+
+	private static long waysMask(int first, int nb) {
+		return (nb == 64 ? -1L : (1L << nb) - 1) << first;
+	}
+
+	public void reset() {
+		for (int set = 0; set < r_tree.length; set++) {
+			r_tree[set] = 0;
+		}
+	}
+
+	/**
+	 * Makes the nodes on the path to the way point away from it if away is true, or to it otherwise
+	 */
+	private void point(int set, int way, boolean away) {
+		long tree = r_tree[set];
+		int node = 1;
+		int first = 0;
+		for (int size = m_leaves; size > 1; size /= 2) {
+			int half = size / 2;
+			boolean upper = way >= first + half;
+			if (upper == away) {
+				tree &= ~(1L << node);
+			}
+			else {
+				tree |= 1L << node;
+			}
+			node = 2 * node + (upper ? 1 : 0);
+			first += upper ? half : 0;
+		}
+		r_tree[set] = tree;
+	}
+
+	public void touch(int set, int way) {
+		point(set, way, true);
+	}
+
+	public void fill(int set, int way) {
+		point(set, way, true);
+	}
+
+	public void invalidate(int set, int way) {
+		point(set, way, false);
+	}
+
+	public int victim(int set, long candidates) {
+		long tree = r_tree[set];
+		int node = 1;
+		int first = 0;
+		for (int size = m_leaves; size > 1; size /= 2) {
+			int half = size / 2;
+			boolean upper = (tree & (1L << node)) != 0;
+			if ((candidates & waysMask(upper ? first + half : first, half)) == 0) {
+				upper = !upper;
+			}
+			node = 2 * node + (upper ? 1 : 0);
+			first += upper ? half : 0;
+		}
+		return first;
+	}
+}
@@ -0,0 +1,179 @@
+package simulation;
+
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import model.Channel;
+import model.ChannelStats;
+import model.Request.cmd_t;
+import topcells.Topcell;
+
+/**
+ * Drives a topcell without any graphical interface: cycles are simulated in a tight loop
+ * until all the processors have received the responses to their requests, or until a
+ * maximum number of cycles has been reached.
+ * In event-driven mode, idle cycles are skipped by an EventDrivenKernel, and the simulation
+ * also stops when the topcell becomes quiescent.
+ * When a ForkJoinPool is given, the modules of each cycle are evaluated in parallel on this pool.
+ * This class must not reference the view or controller packages, so that no AWT class is
+ * loaded when running simulations in batch mode.
+ * @author QLM
+ *
+ */
+public class BatchRunner {
+
+	private Topcell m_topcell;
+	private int m_max_cycles;
+	private EventDrivenKernel m_kernel;
+
+	private boolean m_finished;
+	private long m_elapsed_ns;
+
+	private RequestCounter m_proc_counter = new RequestCounter();
+	private RequestCounter m_cache_counter = new RequestCounter();
+	private LatencyAnalyzer m_latency = new LatencyAnalyzer();
+	private ChannelSampler m_sampler = null;
+
+	/**
+	 * @param topcell : the topcell to simulate
+	 * @param maxCycles : the simulation stops after this number of cycles even if
+	 *                    some processors still wait for responses
+	 */
+	public BatchRunner(Topcell topcell, int maxCycles) {
+		m_topcell = topcell;
+		m_max_cycles = maxCycles;
+		m_kernel = null;
+		m_finished = false;
+		m_elapsed_ns = 0;
+		m_topcell.getProcRequestHistory().addListener(m_proc_counter);
+		m_topcell.getCacheRequestHistory().addListener(m_cache_counter);
+		m_topcell.getProcRequestHistory().addListener(m_latency);
+		m_topcell.getCacheRequestHistory().addListener(m_latency);
+	}
+
+	/**
+	 * @param eventDriven : if true, idle cycles are skipped instead of being simulated one by one
+	 */
+	public void setEventDriven(boolean eventDriven) {
+		m_kernel = eventDriven ? new EventDrivenKernel(m_topcell) : null;
+	}
+
+	/**
+	 * @param pool : the pool used to evaluate the modules in parallel, or null for a sequential simulation
+	 */
+	public void setPool(ForkJoinPool pool) {
+		m_topcell.getScheduler().setPool(pool);
+	}
+
+	/**
+	 * @param sampler : the sampler called after each simulated cycle, or null
+	 */
+	public void setSampler(ChannelSampler sampler) {
+		m_sampler = sampler;
+	}
+
+	/**
+	 * @return true if all the processors of the topcell have received all their responses
+	 */
+	public boolean allProcsDone() {
+		for (int i = 0; i < m_topcell.getNbProcs(); i++) {
+			if (!m_topcell.getProcessor(i).stopOk()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Simulates the topcell until all the processors are done or the maximum number
+	 * of cycles is reached.
+	 * @return true if the simulation ended because all the processors were done
+	 */
+	public boolean run() {
+		long start = System.nanoTime();
+		while (m_topcell.getNbCycles() < m_max_cycles && !allProcsDone()) {
+			if (m_kernel == null) {
+				m_topcell.simulate1Cycle();
+			}
+			else if (!m_kernel.simulateNextEvent(m_max_cycles)) {
+				break;
+			}
+			if (m_sampler != null) {
+				m_sampler.sample(m_topcell.getNbCycles());
+			}
+		}
+		m_finished = allProcsDone();
+		m_elapsed_ns += System.nanoTime() - start;
+		return m_finished;
+	}
+
+	public Topcell getTopcell() {
+		return m_topcell;
+	}
+
+	public boolean isFinished() {
+		return m_finished;
+	}
+
+	public long getElapsedNs() {
+		return m_elapsed_ns;
+	}
+
+	/**
+	 * @return the counts of the requests finished in the processor/cache channels, which do not
+	 *         depend on the retention of the request histories of the topcell
+	 */
+	public RequestCounter getProcCounter() {
+		return m_proc_counter;
+	}
+
+	public RequestCounter getCacheCounter() {
+		return m_cache_counter;
+	}
+
+	/**
+	 * @return the breakdown of the latency of the processor and cache/memory transactions
+	 */
+	public LatencyAnalyzer getLatencyAnalyzer() {
+		return m_latency;
+	}
+
+	/**
+	 * @return a textual report of the last run
+	 */
+	public String report() {
+		int cycles = m_topcell.getNbCycles();
+		double seconds = m_elapsed_ns / 1e9;
+		String res = "=== Simulation report ===\n";
+		res += "    topcell: " + m_topcell.getClass().getSimpleName() + "\n";
+		res += "    cycles: " + cycles + (m_finished ? "" : " (maximum reached, processors not done)") + "\n";
+		res += "    processors: " + m_topcell.getNbProcs() + " / memories: " + m_topcell.getNbMem() + "\n";
+		res += "    processor requests: " + m_proc_counter.getNbRequests() + "\n";
+		for (Map.Entry<cmd_t, Integer> e : m_proc_counter.getCountPerCmd().entrySet()) {
+			res += "        " + e.getKey() + ": " + e.getValue() + "\n";
+		}
+		res += "    cache/memory requests: " + m_cache_counter.getNbRequests() + "\n";
+		for (Map.Entry<cmd_t, Integer> e : m_cache_counter.getCountPerCmd().entrySet()) {
+			res += "        " + e.getKey() + ": " + e.getValue() + "\n";
+		}
+		res += "    latency breakdown per command answered (mean cycles):\n";
+		res += m_latency.toString().replaceAll("(?m)^", "        ");
+		res += "    channels:\n";
+		res += String.format("        %-16s %s\n", "", ChannelStats.summaryHeader());
+		for (Channel c : m_topcell.getAllChannels()) {
+			res += String.format("        %-16s %s\n", c.getName(), c.getStats().summary());
+		}
+		for (Channel c : m_topcell.getAllChannels()) {
+			if (c.getNbClasses() > 1) {
+				res += "    traffic classes of " + c.getName() + ":\n";
+				res += c.getStats().toString().replaceAll("(?m)^", "        ");
+			}
+		}
+		res += "    wall time: " + String.format("%.3f", seconds) + " s";
+		if (seconds > 0) {
+			res += " (" + String.format("%.0f", cycles / seconds) + " cycles/s)";
+		}
+		res += "\n";
+		return res;
+	}
+}
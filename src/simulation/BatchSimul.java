@@ -0,0 +1,166 @@
+package simulation;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ForkJoinPool;
+
+import model.ActivityScheduler;
+import model.Channel;
+import model.RequestHistory;
+import topcells.Topcell;
+import utils.Trace;
+
+/**
+ * Main class for simulations without graphical interface.
+ * Usage: BatchSimul [-event] [-threads n] [-seed n] [-trace [prefix=]level]... [-history none|all|n|file=prefix]
+ *                   [-sample n file] [-stats] [topcell class name] [max cycles]
+ * The topcell class is searched in the topcells package (default: Top2Procs1Ram).
+ * With -event, idle cycles are skipped by the event-driven kernel.
+ * With -threads, the modules are evaluated in parallel on n threads.
+ * With -seed, the latencies of the requests are drawn from the seed n instead of the default seed;
+ * the same seed always gives the same simulation.
+ * Traces are off by default; -trace level sets the level of all the modules, and
+ * -trace prefix=level the level of the modules whose name starts with prefix.
+ * The finished requests are only counted by default; -history all keeps them in memory, -history n keeps
+ * those of the last n cycles, and -history file=prefix writes them to prefix_procs.txt and prefix_caches.txt.
+ * With -sample, the occupancy and traffic of the channels are written to file every n cycles (see ChannelSampler).
+ * With -stats, the report includes the message mix and the histograms of each channel.
+ * @author QLM
+ *
+ */
+public class BatchSimul {
+
+	private static final String defaultTopcell = "Top2Procs1Ram";
+	private static final int defaultMaxCycles = 100000;
+
+	private static void setHistory(RequestHistory h, String history, String suffix) throws IOException {
+		if (history.equals("none")) {
+			h.setRetention(RequestHistory.Retention.NONE);
+		}
+		else if (history.equals("all")) {
+			h.setRetention(RequestHistory.Retention.ALL);
+		}
+		else if (history.startsWith("file=")) {
+			h.setFile(history.substring(5) + suffix);
+		}
+		else {
+			h.setLastCycles(Integer.parseInt(history));
+		}
+	}
+
+	/**
+	 * Builds the topcell of class name with its constructor without arguments
+	 */
+	private static Topcell newTopcell(String name) throws Exception {
+		Class<?> c;
+		try {
+			c = Class.forName(name);
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown topcell class " + name);
+		}
+		if (!Topcell.class.isAssignableFrom(c)) {
+			throw new IllegalArgumentException("Class " + name + " is not a topcell");
+		}
+		try {
+			return (Topcell) c.getConstructor().newInstance();
+		}
+		catch (NoSuchMethodException e) {
+			throw new IllegalArgumentException("Topcell class " + name + " has no public constructor without arguments");
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		String name = defaultTopcell;
+		int maxCycles = defaultMaxCycles;
+		boolean eventDriven = false;
+		int nbThreads = 1;
+		long seed = ActivityScheduler.defaultSeed;
+		int nbArgs = 0;
+		String history = "none";
+		int samplePeriod = 0;
+		String sampleFile = null;
+		boolean details = false;
+		Trace.setDefaultLevel(Trace.Level.OFF);
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-event")) {
+				eventDriven = true;
+			}
+			else if (arg.equals("-threads")) {
+				nbThreads = Integer.parseInt(args[++i]);
+			}
+			else if (arg.equals("-seed")) {
+				seed = Long.parseLong(args[++i]);
+			}
+			else if (arg.equals("-trace")) {
+				String [] level = args[++i].split("=");
+				if (level.length == 1) {
+					Trace.setDefaultLevel(Trace.Level.valueOf(level[0]));
+				}
+				else {
+					Trace.setLevel(level[0], Trace.Level.valueOf(level[1]));
+				}
+			}
+			else if (arg.equals("-sample")) {
+				samplePeriod = Integer.parseInt(args[++i]);
+				sampleFile = args[++i];
+			}
+			else if (arg.equals("-stats")) {
+				details = true;
+			}
+			else if (arg.equals("-history")) {
+				history = args[++i];
+			}
+			else if (nbArgs == 0) {
+				name = arg;
+				nbArgs++;
+			}
+			else {
+				maxCycles = Integer.parseInt(arg);
+				nbArgs++;
+			}
+		}
+		if (name.indexOf('.') == -1) {
+			name = "topcells." + name;
+		}
+
+		Topcell topcell = newTopcell(name);
+		topcell.getScheduler().setSeed(seed);
+		setHistory(topcell.getProcRequestHistory(), history, "_procs.txt");
+		setHistory(topcell.getCacheRequestHistory(), history, "_caches.txt");
+		BatchRunner runner = new BatchRunner(topcell, maxCycles);
+		runner.setEventDriven(eventDriven);
+		ForkJoinPool pool = null;
+		if (nbThreads > 1) {
+			pool = new ForkJoinPool(nbThreads);
+			runner.setPool(pool);
+		}
+		ChannelSampler sampler = null;
+		if (samplePeriod > 0) {
+			sampler = new ChannelSampler(topcell, samplePeriod, new PrintWriter(new FileWriter(sampleFile)));
+			runner.setSampler(sampler);
+		}
+		runner.run();
+		if (sampler != null) {
+			sampler.close();
+		}
+		if (pool != null) {
+			pool.shutdown();
+		}
+		topcell.getProcRequestHistory().close();
+		topcell.getCacheRequestHistory().close();
+		Trace.flush();
+		System.out.println(runner.report());
+		if (details) {
+			for (Channel c : topcell.getAllChannels()) {
+				System.out.println("=== " + c.getName() + " ===");
+				System.out.println(c.getStats().details());
+			}
+		}
+		if (!runner.isFinished()) {
+			System.exit(1);
+		}
+	}
+}
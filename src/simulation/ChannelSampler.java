@@ -0,0 +1,64 @@
+package simulation;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+import model.Channel;
+import topcells.Topcell;
+
+/**
+ * Periodically writes the state of the channels of a topcell, one line per channel and per sample:
+ * cycle, channel name, occupancy (requests in transit and in the output ports), and the messages and
+ * data words pushed since the previous sample.
+ * In event-driven mode, the samples of the periods ending during skipped cycles are only written after the
+ * next simulated cycle, and thus include the changes made during this cycle.
+ * @author QLM
+ *
+ */
+public class ChannelSampler {
+
+	private List<Channel> m_channels;
+	private int m_period;
+	private int m_next_sample;
+	private PrintWriter m_out;
+	private long [] m_last_msgs;
+	private long [] m_last_words;
+
+	/**
+	 * @param topcell : the topcell whose channels are sampled
+	 * @param period : number of cycles between two samples
+	 * @param out : the writer receiving the samples
+	 */
+	public ChannelSampler(Topcell topcell, int period, PrintWriter out) {
+		assert (period > 0);
+		m_channels = topcell.getAllChannels();
+		m_period = period;
+		m_next_sample = period;
+		m_out = out;
+		m_last_msgs = new long[m_channels.size()];
+		m_last_words = new long[m_channels.size()];
+		m_out.println("# cycle channel occupancy messages words");
+	}
+
+	/**
+	 * Writes the samples of the periods ended at the given cycle
+	 */
+	public void sample(int cycle) {
+		while (cycle >= m_next_sample) {
+			for (int i = 0; i < m_channels.size(); i++) {
+				Channel c = m_channels.get(i);
+				long msgs = c.getStats().getNbMessages();
+				long words = c.getStats().getNbWords();
+				m_out.println(m_next_sample + " " + c.getName() + " " + c.getOccupancy() + " " + (msgs - m_last_msgs[i])
+						+ " " + (words - m_last_words[i]));
+				m_last_msgs[i] = msgs;
+				m_last_words[i] = words;
+			}
+			m_next_sample += m_period;
+		}
+	}
+
+	public void close() {
+		m_out.close();
+	}
+}
@@ -0,0 +1,65 @@
+package simulation;
+
+import model.Channel;
+import model.Module;
+import topcells.Topcell;
+
+/**
+ * Event-driven simulation of a topcell. Instead of simulating every cycle, the kernel computes
+ * the next cycle in which something can happen, i.e. the next cycle in which a module is not idle
+ * or a channel routes a request to its output port, and skips all the cycles before.
+ * Skipped cycles only increment the cycle counters of the modules, channels and requests, so the
+ * simulation results are the same as the ones of the cycle by cycle simulation.
+ * @author QLM
+ *
+ */
+public class EventDrivenKernel {
+
+	private Topcell m_topcell;
+
+	public EventDrivenKernel(Topcell topcell) {
+		m_topcell = topcell;
+	}
+
+	/**
+	 * @return the number of cycles to simulate to reach the end of the next cycle in which an event occurs:
+	 *         1 if the next cycle has work to do, n > 1 if the n - 1 next cycles can be skipped,
+	 *         or -1 if nothing will ever happen (all modules idle and all channels empty)
+	 */
+	public int cyclesToNextEvent() {
+		for (Module m : m_topcell.getAllModules()) {
+			if (!m.isIdle()) {
+				return 1;
+			}
+		}
+		int res = -1;
+		for (Channel c : m_topcell.getAllChannels()) {
+			int delay = c.nextPopDelay();
+			if (delay != -1 && (res == -1 || delay < res)) {
+				res = delay;
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * Skips the idle cycles and simulates the next cycle in which an event occurs.
+	 * The cycle counter of the topcell never exceeds maxCycles.
+	 * @param maxCycles cycle at which the simulation must stop
+	 * @return false if the topcell is quiescent (nothing can happen anymore), true otherwise
+	 */
+	public boolean simulateNextEvent(int maxCycles) {
+		int delay = cyclesToNextEvent();
+		if (delay == -1) {
+			return false;
+		}
+		int remaining = maxCycles - m_topcell.getNbCycles();
+		if (delay > 1) {
+			m_topcell.skipCycles(Math.min(delay - 1, remaining));
+		}
+		if (m_topcell.getNbCycles() < maxCycles) {
+			m_topcell.simulate1Cycle();
+		}
+		return true;
+	}
+}
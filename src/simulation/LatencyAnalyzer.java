@@ -0,0 +1,100 @@
+package simulation;
+
+import model.Request;
+import model.Request.cmd_t;
+import model.RequestListener;
+
+/**
+ * Listener splitting the latency of the transactions into network, queueing and service times,
+ * per command of the request answered. It is notified of the responses when they are consumed, a response
+ * carrying the timestamps of the request it answers (see Request.answers()).
+ * The latency of a transaction goes from the creation of the request to the consumption of the response, and is
+ * the sum of:
+ *  - the network time: transit of the request and of the response in their channels, from their push until they
+ *    can be read at the output port
+ *  - the queueing time: wait of the request before its push, and wait of the request and of the response at their
+ *    output ports until their consumer reads them
+ *  - the service time: from the consumption of the request by the controller to the push of the response; for a
+ *    processor request missing in the L1 cache, it includes the whole miss transaction, whose own breakdown is
+ *    given by the command of the request sent to the memory.
+ * @author QLM
+ *
+ */
+public class LatencyAnalyzer implements RequestListener {
+
+	private long [] m_nb = new long[cmd_t.values().length];
+	private long [] m_total = new long[cmd_t.values().length];
+	private long [] m_network = new long[cmd_t.values().length];
+	private long [] m_queueing = new long[cmd_t.values().length];
+	private long [] m_service = new long[cmd_t.values().length];
+	private int [] m_max = new int[cmd_t.values().length];
+
+	public void requestFinished(Request rsp) {
+		cmd_t cause = rsp.getCauseCmd();
+		if (cause == null) {
+			return;
+		}
+		int c = cause.ordinal();
+		int network = (rsp.getCauseReadyCycle() - rsp.getCausePushCycle()) + (rsp.getReadyCycle() - rsp.getPushCycle());
+		int queueing = (rsp.getCausePushCycle() - rsp.getCauseCreatedCycle())
+				+ (rsp.getCauseEndCycle() - rsp.getCauseReadyCycle()) + (rsp.getEndCycle() - rsp.getReadyCycle());
+		int service = rsp.getPushCycle() - rsp.getCauseEndCycle();
+		int total = rsp.getEndCycle() - rsp.getCauseCreatedCycle();
+		m_nb[c]++;
+		m_total[c] += total;
+		m_network[c] += network;
+		m_queueing[c] += queueing;
+		m_service[c] += service;
+		if (total > m_max[c]) {
+			m_max[c] = total;
+		}
+	}
+
+	/**
+	 * @return the number of requests of the command answered
+	 */
+	public long getNbRequests(cmd_t cmd) {
+		return m_nb[cmd.ordinal()];
+	}
+
+	private double mean(long [] sums, cmd_t cmd) {
+		long nb = m_nb[cmd.ordinal()];
+		return nb == 0 ? 0 : (double) sums[cmd.ordinal()] / nb;
+	}
+
+	public double getMeanLatency(cmd_t cmd) {
+		return mean(m_total, cmd);
+	}
+
+	public double getMeanNetwork(cmd_t cmd) {
+		return mean(m_network, cmd);
+	}
+
+	public double getMeanQueueing(cmd_t cmd) {
+		return mean(m_queueing, cmd);
+	}
+
+	public double getMeanService(cmd_t cmd) {
+		return mean(m_service, cmd);
+	}
+
+	public int getMaxLatency(cmd_t cmd) {
+		return m_max[cmd.ordinal()];
+	}
+
+	/**
+	 * @return a table of the mean times per command answered, one line per command seen
+	 */
+	public String toString() {
+		String res = String.format("%-12s %10s %10s %10s %10s %10s %8s\n", "command", "answered", "latency", "network",
+				"queueing", "service", "max");
+		for (cmd_t cmd : cmd_t.values()) {
+			if (m_nb[cmd.ordinal()] > 0) {
+				res += String.format("%-12s %10d %10.2f %10.2f %10.2f %10.2f %8d\n", cmd, m_nb[cmd.ordinal()],
+						getMeanLatency(cmd), getMeanNetwork(cmd), getMeanQueueing(cmd), getMeanService(cmd),
+						getMaxLatency(cmd));
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,130 @@
+package simulation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import model.RequestHistory;
+import topcells.Protocol;
+import topcells.Topcell;
+
+/**
+ * Runs a grid of simulations: every combination of the topcells, cache geometries, protocols
+ * and workloads added is built as an independent topcell and simulated in batch mode.
+ * Points are simulated concurrently on a bounded pool of worker threads, and the results
+ * are returned in the order of the grid.
+ * @author QLM
+ *
+ */
+public class ParameterSweep {
+
+	private List<String> m_topcells = new ArrayList<String>();
+	private List<int []> m_geometries = new ArrayList<int []>();
+	private List<Protocol> m_protocols = new ArrayList<Protocol>();
+	private List<Workload> m_workloads = new ArrayList<Workload>();
+
+	private int m_max_cycles;
+	private int m_nb_threads;
+
+	/**
+	 * @param maxCycles : maximum number of cycles simulated for each point
+	 * @param nbThreads : number of points simulated concurrently
+	 */
+	public ParameterSweep(int maxCycles, int nbThreads) {
+		m_max_cycles = maxCycles;
+		m_nb_threads = nbThreads;
+	}
+
+	public void addTopcell(String name) {
+		m_topcells.add(name);
+	}
+
+	public void addGeometry(int nways, int nsets, int nwords) {
+		m_geometries.add(new int [] { nways, nsets, nwords });
+	}
+
+	public void addProtocol(Protocol protocol) {
+		m_protocols.add(protocol);
+	}
+
+	public void addWorkload(Workload workload) {
+		m_workloads.add(workload);
+	}
+
+	/**
+	 * @return all the points of the grid
+	 */
+	public List<SweepPoint> getPoints() {
+		List<SweepPoint> res = new ArrayList<SweepPoint>();
+		for (String topcell : m_topcells) {
+			for (int [] geom : m_geometries) {
+				for (Protocol protocol : m_protocols) {
+					for (Workload workload : m_workloads) {
+						res.add(new SweepPoint(topcell, geom[0], geom[1], geom[2], protocol, workload));
+					}
+				}
+			}
+		}
+		return res;
+	}
+
+	private SweepResult simulate(SweepPoint point) {
+		try {
+			Topcell topcell = point.build();
+			topcell.getProcRequestHistory().setRetention(RequestHistory.Retention.NONE);
+			topcell.getCacheRequestHistory().setRetention(RequestHistory.Retention.NONE);
+			BatchRunner runner = new BatchRunner(topcell, m_max_cycles);
+			runner.setEventDriven(true);
+			runner.run();
+			return new SweepResult(point, runner);
+		}
+		catch (Throwable e) {
+			return new SweepResult(point, e);
+		}
+	}
+
+	/**
+	 * Simulates all the points of the grid.
+	 * @return the results, in the order of getPoints()
+	 */
+	public List<SweepResult> run() throws InterruptedException {
+		List<SweepPoint> points = getPoints();
+		ExecutorService executor = Executors.newFixedThreadPool(m_nb_threads);
+		List<Future<SweepResult>> futures = new ArrayList<Future<SweepResult>>();
+		for (final SweepPoint point : points) {
+			futures.add(executor.submit(new Callable<SweepResult>() {
+				public SweepResult call() {
+					return simulate(point);
+				}
+			}));
+		}
+		executor.shutdown();
+
+		List<SweepResult> res = new ArrayList<SweepResult>();
+		for (int i = 0; i < points.size(); i++) {
+			try {
+				res.add(futures.get(i).get());
+			}
+			catch (ExecutionException e) {
+				res.add(new SweepResult(points.get(i), e.getCause()));
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @param results
+	 * @return a table with one line per point
+	 */
+	public static String table(List<SweepResult> results) {
+		String res = SweepResult.header() + "\n";
+		for (SweepResult r : results) {
+			res += r + "\n";
+		}
+		return res;
+	}
+}
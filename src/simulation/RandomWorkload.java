@@ -0,0 +1,60 @@
+package simulation;
+
+import java.util.Random;
+
+import topcells.Topcell;
+
+/**
+ * Workload made of random reads and writes of words in an address range.
+ * The requests only depend on the seed, so that all the topcells of a sweep
+ * receive the same requests. The seed is also used as the seed of the simulation,
+ * from which the channels draw the latencies of the requests.
+ * @author QLM
+ *
+ */
+public class RandomWorkload implements Workload {
+
+	private String m_name;
+	private long m_seed;
+	private int m_nb_reqs;
+	private int m_write_percent;
+	private long m_base_address;
+	private int m_nb_words;
+
+	/**
+	 * @param name : name of the workload in the reports
+	 * @param seed : seed of the random generator
+	 * @param nbReqs : number of requests per processor
+	 * @param writePercent : percentage of writes among the requests
+	 * @param baseAddress : first address of the range accessed
+	 * @param nbWords : size of the range accessed, in words
+	 */
+	public RandomWorkload(String name, long seed, int nbReqs, int writePercent, long baseAddress, int nbWords) {
+		m_name = name;
+		m_seed = seed;
+		m_nb_reqs = nbReqs;
+		m_write_percent = writePercent;
+		m_base_address = baseAddress;
+		m_nb_words = nbWords;
+	}
+
+	public String getName() {
+		return m_name;
+	}
+
+	public void load(Topcell topcell) {
+		topcell.getScheduler().setSeed(m_seed);
+		Random rand = new Random(m_seed);
+		for (int i = 0; i < topcell.getNbProcs(); i++) {
+			for (int n = 0; n < m_nb_reqs; n++) {
+				long addr = m_base_address + 4 * rand.nextInt(m_nb_words);
+				if (rand.nextInt(100) < m_write_percent) {
+					topcell.getProcessor(i).addWrite(addr, rand.nextInt());
+				}
+				else {
+					topcell.getProcessor(i).addRead(addr);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,45 @@
+package simulation;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import model.Request;
+import model.Request.cmd_t;
+import model.RequestListener;
+
+/**
+ * Listener counting the finished requests per command, without keeping them.
+ * @author QLM
+ *
+ */
+public class RequestCounter implements RequestListener {
+
+	private int [] m_nb_per_cmd = new int[cmd_t.values().length];
+	private int m_nb_reqs = 0;
+
+	public void requestFinished(Request req) {
+		m_nb_per_cmd[req.getCmd().ordinal()]++;
+		m_nb_reqs++;
+	}
+
+	public int getNbRequests() {
+		return m_nb_reqs;
+	}
+
+	public int getNbRequests(cmd_t cmd) {
+		return m_nb_per_cmd[cmd.ordinal()];
+	}
+
+	/**
+	 * @return the number of requests of each command, for the commands seen at least once
+	 */
+	public Map<cmd_t, Integer> getCountPerCmd() {
+		Map<cmd_t, Integer> res = new TreeMap<cmd_t, Integer>();
+		for (cmd_t cmd : cmd_t.values()) {
+			if (m_nb_per_cmd[cmd.ordinal()] > 0) {
+				res.put(cmd, m_nb_per_cmd[cmd.ordinal()]);
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,88 @@
+package simulation;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import topcells.GenericTopcell;
+import topcells.Protocol;
+import topcells.Topcell;
+import topcells.TopcellConfig;
+
+/**
+ * A point of a parameter sweep: a topcell class, a cache geometry, a protocol and a workload.
+ * @author QLM
+ *
+ */
+public class SweepPoint {
+
+	private static final Pattern genericName = Pattern.compile("(\\d+)p(\\d+)m");
+	private static final int genericMemSize = 0x1000000;
+
+	private String m_topcell;
+	private int m_nways;
+	private int m_nsets;
+	private int m_nwords;
+	private Protocol m_protocol;
+	private Workload m_workload;
+
+	/**
+	 * @param topcell : name of the topcell class, which must have a constructor taking (nways, nsets, nwords, protocol),
+	 *        or "<n>p<m>m" for a GenericTopcell with n processors and m memory banks
+	 */
+	public SweepPoint(String topcell, int nways, int nsets, int nwords, Protocol protocol, Workload workload) {
+		m_topcell = topcell;
+		m_nways = nways;
+		m_nsets = nsets;
+		m_nwords = nwords;
+		m_protocol = protocol;
+		m_workload = workload;
+	}
+
+	/**
+	 * @return a new topcell for this point, loaded with the workload
+	 */
+	public Topcell build() throws Exception {
+		Topcell topcell;
+		Matcher generic = genericName.matcher(m_topcell);
+		if (generic.matches()) {
+			topcell = new GenericTopcell(TopcellConfig.contiguous(Integer.parseInt(generic.group(1)),
+					Integer.parseInt(generic.group(2)), genericMemSize, m_nways, m_nsets, m_nwords, m_protocol));
+			m_workload.load(topcell);
+			return topcell;
+		}
+		String name = m_topcell.indexOf('.') == -1 ? "topcells." + m_topcell : m_topcell;
+		topcell = (Topcell) Class.forName(name)
+				.getConstructor(int.class, int.class, int.class, Protocol.class)
+				.newInstance(m_nways, m_nsets, m_nwords, m_protocol);
+		m_workload.load(topcell);
+		return topcell;
+	}
+
+	public String getTopcell() {
+		return m_topcell;
+	}
+
+	public int getNways() {
+		return m_nways;
+	}
+
+	public int getNsets() {
+		return m_nsets;
+	}
+
+	public int getNwords() {
+		return m_nwords;
+	}
+
+	public Protocol getProtocol() {
+		return m_protocol;
+	}
+
+	public Workload getWorkload() {
+		return m_workload;
+	}
+
+	public String toString() {
+		return m_topcell + " " + m_protocol + " " + m_nways + "x" + m_nsets + "x" + m_nwords + " " + m_workload.getName();
+	}
+}
@@ -0,0 +1,79 @@
+package simulation;
+
+/**
+ * Results of the simulation of a sweep point.
+ * @author QLM
+ *
+ */
+public class SweepResult {
+
+	private SweepPoint m_point;
+	private int m_cycles;
+	private boolean m_finished;
+	private int m_nb_proc_reqs;
+	private int m_nb_cache_reqs;
+	private long m_elapsed_ns;
+	private String m_error;
+
+	SweepResult(SweepPoint point, BatchRunner runner) {
+		m_point = point;
+		m_cycles = runner.getTopcell().getNbCycles();
+		m_finished = runner.isFinished();
+		m_nb_proc_reqs = runner.getProcCounter().getNbRequests();
+		m_nb_cache_reqs = runner.getCacheCounter().getNbRequests();
+		m_elapsed_ns = runner.getElapsedNs();
+		m_error = null;
+	}
+
+	SweepResult(SweepPoint point, Throwable error) {
+		m_point = point;
+		m_finished = false;
+		m_error = error.toString();
+	}
+
+	public SweepPoint getPoint() {
+		return m_point;
+	}
+
+	public int getCycles() {
+		return m_cycles;
+	}
+
+	public boolean isFinished() {
+		return m_finished;
+	}
+
+	public int getNbProcRequests() {
+		return m_nb_proc_reqs;
+	}
+
+	public int getNbCacheRequests() {
+		return m_nb_cache_reqs;
+	}
+
+	public long getElapsedNs() {
+		return m_elapsed_ns;
+	}
+
+	/**
+	 * @return the description of the error which stopped the simulation, or null
+	 */
+	public String getError() {
+		return m_error;
+	}
+
+	static String header() {
+		return String.format("%-16s %-5s %5s %6s %6s %-12s %10s %9s %10s %9s %s",
+				"topcell", "proto", "nways", "nsets", "nwords", "workload",
+				"cycles", "proc_reqs", "cache_reqs", "time_ms", "status");
+	}
+
+	public String toString() {
+		SweepPoint p = m_point;
+		String status = m_error != null ? "error: " + m_error : (m_finished ? "ok" : "not finished");
+		return String.format("%-16s %-5s %5d %6d %6d %-12s %10d %9d %10d %9d %s",
+				p.getTopcell(), p.getProtocol(), p.getNways(), p.getNsets(), p.getNwords(),
+				p.getWorkload().getName(), m_cycles, m_nb_proc_reqs, m_nb_cache_reqs,
+				m_elapsed_ns / 1000000, status);
+	}
+}
@@ -0,0 +1,111 @@
+package simulation;
+
+import topcells.Protocol;
+import utils.Trace;
+
+/**
+ * Main class for parameter sweeps.
+ * Usage: SweepSimul [options], where options are (lists are comma-separated):
+ *  -topcells t1,t2      topcell classes, or <n>p<m>m for n processors and m memories (default: Top2Procs1Ram)
+ *  -ways w1,w2          numbers of ways (default: 1)
+ *  -sets s1,s2          numbers of sets (default: 16)
+ *  -words n1,n2         numbers of words per line (default: 8)
+ *  -protocols p1,p2     protocols among WTI and MESI (default: both)
+ *  -reqs n              number of random requests per processor (default: 100)
+ *  -writes p            percentage of writes (default: 30)
+ *  -seeds s1,s2         seeds of the random workloads and of the simulations (default: 1)
+ *  -threads n           number of points simulated concurrently (default: number of cores)
+ *  -max n               maximum number of cycles per point (default: 1000000)
+ * @author QLM
+ *
+ */
+public class SweepSimul {
+
+	private static final long workloadBase = 0x00400000;
+	private static final int workloadWords = 1024;
+
+	private static int [] parseInts(String list) {
+		String [] items = list.split(",");
+		int [] res = new int[items.length];
+		for (int i = 0; i < items.length; i++) {
+			res[i] = Integer.parseInt(items[i]);
+		}
+		return res;
+	}
+
+	public static void main(String[] args) throws Exception {
+		String [] topcells = { "Top2Procs1Ram" };
+		int [] ways = { 1 };
+		int [] sets = { 16 };
+		int [] words = { 8 };
+		String [] protocols = { "WTI", "MESI" };
+		int [] seeds = { 1 };
+		int nbReqs = 100;
+		int writePercent = 30;
+		int nbThreads = Runtime.getRuntime().availableProcessors();
+		int maxCycles = 1000000;
+
+		for (int i = 0; i < args.length; i += 2) {
+			String opt = args[i];
+			String val = args[i + 1];
+			if (opt.equals("-topcells")) {
+				topcells = val.split(",");
+			}
+			else if (opt.equals("-ways")) {
+				ways = parseInts(val);
+			}
+			else if (opt.equals("-sets")) {
+				sets = parseInts(val);
+			}
+			else if (opt.equals("-words")) {
+				words = parseInts(val);
+			}
+			else if (opt.equals("-protocols")) {
+				protocols = val.split(",");
+			}
+			else if (opt.equals("-reqs")) {
+				nbReqs = Integer.parseInt(val);
+			}
+			else if (opt.equals("-writes")) {
+				writePercent = Integer.parseInt(val);
+			}
+			else if (opt.equals("-seeds")) {
+				seeds = parseInts(val);
+			}
+			else if (opt.equals("-threads")) {
+				nbThreads = Integer.parseInt(val);
+			}
+			else if (opt.equals("-max")) {
+				maxCycles = Integer.parseInt(val);
+			}
+			else {
+				throw new IllegalArgumentException("Unknown option " + opt);
+			}
+		}
+
+		Trace.setDefaultLevel(Trace.Level.OFF);
+		ParameterSweep sweep = new ParameterSweep(maxCycles, nbThreads);
+		for (String t : topcells) {
+			sweep.addTopcell(t);
+		}
+		for (int nways : ways) {
+			for (int nsets : sets) {
+				for (int nwords : words) {
+					sweep.addGeometry(nways, nsets, nwords);
+				}
+			}
+		}
+		for (String p : protocols) {
+			sweep.addProtocol(Protocol.valueOf(p));
+		}
+		for (int seed : seeds) {
+			sweep.addWorkload(new RandomWorkload("rand" + seed, seed, nbReqs, writePercent, workloadBase, workloadWords));
+		}
+
+		long start = System.nanoTime();
+		String table = ParameterSweep.table(sweep.run());
+		System.out.println(table);
+		System.out.println(sweep.getPoints().size() + " points simulated in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+	}
+}
@@ -0,0 +1,18 @@
+package simulation;
+
+import topcells.Topcell;
+
+/**
+ * A workload loads processor requests into a topcell before the simulation starts.
+ * Implementations must be usable from several threads at once, since the same workload
+ * is loaded into the independent topcells of a parameter sweep.
+ * @author QLM
+ *
+ */
+public interface Workload {
+
+	public String getName();
+
+	public void load(Topcell topcell);
+
+}
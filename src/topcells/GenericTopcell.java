@@ -0,0 +1,240 @@
+package topcells;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import model.ActivityScheduler;
+import model.Channel;
+import model.L1Controller;
+import model.MemController;
+import model.Module;
+import model.NocChannel;
+import model.NocTopology;
+import model.Processor;
+import model.Request;
+import model.Request.cmd_t;
+import model.RequestHistory;
+import utils.Trace;
+import utils.Tracer;
+
+/**
+ * Topcell containing any number of processors and memory banks, described by a TopcellConfig.
+ * Each processor is connected to its L1 cache by a pair of dedicated channels; all the L1 caches
+ * and memory banks share the four coherence channels, as in the fixed topcells. These channels
+ * can be replaced by networks-on-chip (see TopcellConfig.setNoc()).
+ * @author QLM
+ *
+ */
+public class GenericTopcell implements Topcell {
+
+	private int nb_procs;
+	private int nb_rams;
+	private int cycle = 0;
+
+	private Vector<L1Controller> l1_caches;
+	private Vector<Processor> processors;
+	private Vector<MemController> mems;
+
+	private Channel l1_mem_req;
+	private Channel mem_l1_rsp;
+
+	private Channel mem_l1_req;
+	private Channel l1_mem_rsp;
+
+	private RequestHistory cacheHistory = new RequestHistory();
+	private RequestHistory procHistory = new RequestHistory();
+
+	private List<Module> moduleList = new ArrayList<Module>();
+	private List<Channel> channelList = new ArrayList<Channel>();
+
+	private ActivityScheduler scheduler = new ActivityScheduler();
+
+	private Tracer tracer = Trace.getTracer("GenericTopcell");
+
+	private Map<Integer, Processor> processorPerSrcid = new HashMap<Integer, Processor>();
+
+	public GenericTopcell(TopcellConfig config) {
+		nb_procs = config.getNbProcs();
+		nb_rams = config.getNbMems();
+		Protocol protocol = config.getProtocol();
+		if (config.getNocTopology() != null
+				&& (config.getFlitsPerCycle() > 0 || !config.getTrafficClasses().isEmpty())) {
+			throw new IllegalArgumentException(
+					"The bandwidth and the traffic classes of the channels are not modeled by networks-on-chip");
+		}
+		if (config.getNocTopology() != null && config.getNocBufferSize() < 2) {
+			// with less than 2 places, no request could be injected in a ring (see NocChannel)
+			throw new IllegalArgumentException("The buffers of the networks-on-chip need at least 2 places, not "
+					+ config.getNocBufferSize());
+		}
+
+		l1_mem_req = newChannel("l1_mem_req", nb_rams, true, cacheHistory, config);
+		mem_l1_rsp = newChannel("mem_l1_rsp", nb_procs, false, cacheHistory, config);
+
+		mem_l1_req = newChannel("mem_l1_req", nb_procs, false, cacheHistory, config);
+		l1_mem_rsp = newChannel("l1_mem_rsp", nb_rams, false, cacheHistory, config);
+
+		channelList.add(l1_mem_req);
+		channelList.add(mem_l1_rsp);
+		channelList.add(mem_l1_req);
+		channelList.add(l1_mem_rsp);
+		for (Channel c : channelList) {
+			c.setCapacity(config.getChannelCapacity());
+			c.setInOrderDelivery(config.isInOrderDelivery());
+			c.setArbiter(config.getArbitrationPolicy().newArbiter());
+			if (!(c instanceof NocChannel)) {
+				c.setBandwidth(config.getFlitsPerCycle(), config.getWordsPerFlit());
+				for (Map.Entry<cmd_t, Integer> e : config.getTrafficClasses().entrySet()) {
+					c.setTrafficClass(e.getKey(), e.getValue());
+				}
+			}
+		}
+
+		l1_caches = new Vector<L1Controller>(nb_procs);
+		processors = new Vector<Processor>(nb_procs);
+		for (int i = 0; i < nb_procs; i++) {
+			Channel iss_l1 = newChannel("iss_l1_req_" + i, 1, false, procHistory);
+			Channel l1_iss = newChannel("l1_iss_rsp_" + i, 1, false, procHistory);
+			channelList.add(iss_l1);
+			channelList.add(l1_iss);
+
+			L1Controller l1Ctrl = protocol.newL1Controller("L1 controller " + i, i, config.getNways(),
+					config.getNsets(), config.getNwords(), l1_mem_req, mem_l1_rsp, mem_l1_req,
+					l1_mem_rsp, iss_l1, l1_iss);
+			l1Ctrl.setReplacementPolicy(config.getReplacementPolicy());
+			l1_caches.add(l1Ctrl);
+
+			Processor proc = new Processor("Processor " + i, i, iss_l1, l1_iss);
+			processors.add(proc);
+			processorPerSrcid.put(i, proc); // i = srcid
+		}
+
+		// the srcids of the memory controllers follow the ones of the L1 caches when they are too many
+		// for the default range
+		int memStartId = MemController.memStartId;
+		for (L1Controller l1 : l1_caches) {
+			memStartId = Math.max(memStartId, l1.getSrcid() + 1);
+		}
+		mems = new Vector<MemController>(nb_rams);
+		for (int i = 0; i < nb_rams; i++) {
+			MemController mem = protocol.newMemController("Mem controller " + i, memStartId + i, // srcid
+					config.getNwords(), config.newSegmentList(i), l1_mem_req, mem_l1_rsp, mem_l1_req,
+					l1_mem_rsp);
+			mems.add(mem);
+		}
+
+		if (config.getNocTopology() != null) {
+			for (int i = 0; i < 4; i++) {
+				NocChannel noc = (NocChannel) channelList.get(i);
+				for (int p = 0; p < nb_procs; p++) {
+					noc.setNode(l1_caches.get(p).getSrcid(), p);
+				}
+				for (int m = 0; m < nb_rams; m++) {
+					noc.setNode(mems.get(m).getSrcid(), nb_procs + m);
+				}
+			}
+		}
+
+		// Modules are simulated in this order: processors, L1 caches, memories; then channels
+		moduleList.addAll(processors);
+		moduleList.addAll(l1_caches);
+		moduleList.addAll(mems);
+		for (Module m : moduleList) {
+			scheduler.addModule(m);
+		}
+		for (Channel c : channelList) {
+			scheduler.addChannel(c);
+		}
+	}
+
+	public void simulate1Cycle() {
+		// Simulate
+		if (tracer.info()) tracer.format("*** cycle %d ***", cycle);
+
+		// Only active modules are simulated, then channels
+		scheduler.simulate1Cycle();
+
+		cycle++;
+	}
+
+	public int getNbProcs() {
+		return nb_procs;
+	}
+
+	public int getNbMem() {
+		return nb_rams;
+	}
+
+	public int getNbCycles() {
+		return cycle;
+	}
+
+	public List<Request> getFinishedCacheRequests() {
+		return cacheHistory.getRequests();
+	}
+
+	public List<Request> getFinishedProcsRequests() {
+		return procHistory.getRequests();
+	}
+
+	public RequestHistory getCacheRequestHistory() {
+		return cacheHistory;
+	}
+
+	public RequestHistory getProcRequestHistory() {
+		return procHistory;
+	}
+
+	private Channel newChannel(String name, int nbOutputs, boolean addressRouting, RequestHistory history) {
+		Channel channel = new Channel(name, nbOutputs, addressRouting);
+		channel.addListener(history);
+		return channel;
+	}
+
+	/**
+	 * Creates a channel between the L1 caches and the memory banks, which is a network-on-chip
+	 * if the configuration has a topology
+	 */
+	private Channel newChannel(String name, int nbOutputs, boolean addressRouting, RequestHistory history,
+			TopcellConfig config) {
+		if (config.getNocTopology() == null) {
+			return newChannel(name, nbOutputs, addressRouting, history);
+		}
+		NocChannel channel = new NocChannel(name, nbOutputs, addressRouting, config.getNocTopology(),
+				nb_procs + nb_rams);
+		if (config.getNocTopology() == NocTopology.MESH && config.getNocMeshWidth() > 0) {
+			channel.setMeshWidth(config.getNocMeshWidth());
+		}
+		channel.setArbitrationPolicy(config.getArbitrationPolicy());
+		channel.setHopLatency(config.getNocHopLatency());
+		channel.setBufferSize(config.getNocBufferSize());
+		channel.addListener(history);
+		return channel;
+	}
+
+	public List<Module> getAllModules() {
+		return moduleList;
+	}
+
+	public List<Channel> getAllChannels() {
+		return channelList;
+	}
+
+	public ActivityScheduler getScheduler() {
+		return scheduler;
+	}
+
+	public void skipCycles(int nbCycles) {
+		scheduler.skipCycles(nbCycles);
+		cycle += nbCycles;
+	}
+
+	public Processor getProcessor(int srcid) {
+		Processor proc = processorPerSrcid.get(srcid);
+		scheduler.synchronize(proc);
+		return proc;
+	}
+}
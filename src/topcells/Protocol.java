@@ -0,0 +1,65 @@
+package topcells;
+
+import java.util.Vector;
+
+import model.Channel;
+import model.L1Controller;
+import model.L1MesiController;
+import model.L1WtiController;
+import model.MemController;
+import model.MemMesiController;
+import model.MemWtiController;
+import model.Segment;
+
+/**
+ * Coherence protocol used by the L1 and memory controllers of a topcell.
+ * Each value builds the pair of controllers implementing the protocol, so that
+ * topcells can be instantiated with either protocol without code modification.
+ * @author QLM
+ *
+ */
+public enum Protocol {
+
+	/**
+	 * Write-Through Invalidate
+	 */
+	WTI {
+		public L1Controller newL1Controller(String name, int procid, int nways, int nsets, int nwords,
+				Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem,
+				Channel req_from_iss, Channel rsp_to_iss) {
+			return new L1WtiController(name, procid, nways, nsets, nwords, req_to_mem, rsp_from_mem,
+					req_from_mem, rsp_to_mem, req_from_iss, rsp_to_iss);
+		}
+
+		public MemController newMemController(String name, int srcid, int nwords, Vector<Segment> seglist,
+				Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem) {
+			return new MemWtiController(name, srcid, nwords, seglist, req_to_mem, rsp_from_mem, req_from_mem,
+					rsp_to_mem);
+		}
+	},
+
+	/**
+	 * Write-Back MESI
+	 */
+	MESI {
+		public L1Controller newL1Controller(String name, int procid, int nways, int nsets, int nwords,
+				Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem,
+				Channel req_from_iss, Channel rsp_to_iss) {
+			return new L1MesiController(name, procid, nways, nsets, nwords, req_to_mem, rsp_from_mem,
+					req_from_mem, rsp_to_mem, req_from_iss, rsp_to_iss);
+		}
+
+		public MemController newMemController(String name, int srcid, int nwords, Vector<Segment> seglist,
+				Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem) {
+			return new MemMesiController(name, srcid, nwords, seglist, req_to_mem, rsp_from_mem, req_from_mem,
+					rsp_to_mem);
+		}
+	};
+
+	public abstract L1Controller newL1Controller(String name, int procid, int nways, int nsets, int nwords,
+			Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem,
+			Channel req_from_iss, Channel rsp_to_iss);
+
+	public abstract MemController newMemController(String name, int srcid, int nwords, Vector<Segment> seglist,
+			Channel req_to_mem, Channel rsp_from_mem, Channel req_from_mem, Channel rsp_to_mem);
+}
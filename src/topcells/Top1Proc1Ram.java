@@ -0,0 +1,218 @@
+package topcells;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import model.ActivityScheduler;
+import model.Channel;
+import model.L1Controller;
+import model.L1MesiController;
+import model.L1WtiController;
+import model.MemController;
+import model.MemMesiController;
+import model.MemWtiController;
+import model.Module;
+import model.Processor;
+import model.Request;
+import model.RequestHistory;
+import model.Segment;
+import utils.Trace;
+import utils.Tracer;
+
+/**
+ * Topcell designed to contain one processor and one memory bank.
+ * @author QLM
+ *
+ */
+public class Top1Proc1Ram implements Topcell {
+
+	private int nb_procs = 1;
+	private int nb_rams = 1;
+	private int nways = 1;
+	private int nwords = 8;
+	private int nsets = 16;
+	private int cycle = 0;
+	private Protocol protocol = Protocol.MESI;
+
+	private Segment mem_seg;
+
+	private Vector<Segment> seg_list = new Vector<Segment>();
+	private Vector<L1Controller> l1_caches;
+	private Vector<Processor> processors;
+	private Vector<MemController> mem;
+
+	private Channel iss_l1_req;
+	private Channel l1_iss_rsp;
+
+	private Channel l1_mem_req;
+	private Channel mem_l1_rsp;
+
+	private Channel mem_l1_req;
+	private Channel l1_mem_rsp;
+	
+	private RequestHistory cacheHistory = new RequestHistory();
+	private RequestHistory procHistory = new RequestHistory();
+
+	private List<Module> moduleList = new ArrayList<Module>();
+	private List<Channel> channelList = new ArrayList<Channel>();
+
+	private ActivityScheduler scheduler = new ActivityScheduler();
+
+	private Tracer tracer = Trace.getTracer("Top1Proc1Ram");
+
+	private Map<Integer, Processor> processorPerSrcid = new HashMap<Integer, Processor>();
+	
+	/**
+	 * Builds the topcell with the given cache geometry and protocol, without loading any request
+	 */
+	public Top1Proc1Ram(int nways, int nsets, int nwords, Protocol protocol) {
+		this.nways = nways;
+		this.nsets = nsets;
+		this.nwords = nwords;
+		this.protocol = protocol;
+
+		mem_seg = new Segment("mem_seg", 0x0, 0x1000000, true);
+		seg_list.add(mem_seg);
+
+		iss_l1_req = newChannel("iss_l1_req", 1, false, procHistory);
+		l1_iss_rsp = newChannel("l1_iss_rsp", 1, false, procHistory);
+		
+		l1_mem_req = newChannel("l1_mem_req", nb_rams, true, cacheHistory);
+		mem_l1_rsp = newChannel("mem_l1_rsp", nb_procs, false, cacheHistory);
+
+		mem_l1_req = newChannel("mem_l1_req", nb_procs, false, cacheHistory);
+		l1_mem_rsp = newChannel("l1_mem_rsp", nb_rams, false, cacheHistory);
+
+		channelList.add(iss_l1_req);
+		channelList.add(l1_iss_rsp);
+		channelList.add(l1_mem_req);
+		channelList.add(mem_l1_rsp);
+		channelList.add(mem_l1_req);
+		channelList.add(l1_mem_rsp);
+
+		l1_caches = new Vector<L1Controller>(nb_procs);
+		processors = new Vector<Processor>(nb_procs);
+		for (int i = 0; i < nb_procs; i++) {
+			L1Controller l1Ctrl = protocol.newL1Controller("L1 controller " + i, i, nways,
+					nsets, nwords, l1_mem_req, mem_l1_rsp, mem_l1_req,
+					l1_mem_rsp, iss_l1_req, l1_iss_rsp);
+			l1_caches.add(l1Ctrl);
+			
+			
+			Processor proc = new Processor("Processor " + i, i, iss_l1_req, l1_iss_rsp);
+			processors.add(proc);
+			processorPerSrcid.put(i, proc);
+			
+			moduleList.add(proc);
+			moduleList.add(l1Ctrl);
+		}
+		
+		mem = new Vector<MemController>();
+		for (int i = 0; i < nb_rams; i++) {
+			MemController memCtrl = protocol.newMemController("Mem controller " + i,
+					MemController.memStartId + i, // srcid
+					nwords, seg_list, l1_mem_req, mem_l1_rsp, mem_l1_req,
+					l1_mem_rsp);
+			mem.add(memCtrl);
+			moduleList.add(memCtrl);
+		}
+
+		// Modules are simulated in this order: processors, L1 caches, memories; then channels
+		for (int i = 0; i < nb_procs; i++) {
+			scheduler.addModule(processors.get(i));
+		}
+		for (int i = 0; i < nb_procs; i++) {
+			scheduler.addModule(l1_caches.get(i));
+		}
+		for (int i = 0; i < nb_rams; i++) {
+			scheduler.addModule(mem.get(i));
+		}
+		for (Channel c : channelList) {
+			scheduler.addChannel(c);
+		}
+	}
+
+	public Top1Proc1Ram() {
+		this(1, 16, 8, Protocol.MESI);
+
+		// Load requests
+		//processors.get(0).addRead(0x00400000);
+		processors.get(0).addWrite(0x00400000, 10);
+		//processors.get(0).addRead(0x00400000);
+		processors.get(0).addWrite(0x00001000, 5);
+		//processors.get(0).addWrite(0x00001004, 6);
+		processors.get(0).addSync();
+		processors.get(0).addRead(0x00400000);
+
+	}
+
+	public void simulate1Cycle() {
+		// Simulate
+		if (tracer.info()) tracer.format("*** cycle %d ***", cycle);
+
+		// Only active modules are simulated, then channels
+		scheduler.simulate1Cycle();
+		
+		cycle++;
+	}
+	
+	public int getNbProcs() {
+		return nb_procs;
+	}
+	
+	public int getNbMem() {
+		return nb_rams;
+	}
+	
+	public int getNbCycles() {
+		return cycle;
+	}
+	
+	public List<Request> getFinishedCacheRequests() {
+		return cacheHistory.getRequests();
+	}
+	
+	public List<Request> getFinishedProcsRequests() {
+		return procHistory.getRequests();
+	}
+	
+	public RequestHistory getCacheRequestHistory() {
+		return cacheHistory;
+	}
+	
+	public RequestHistory getProcRequestHistory() {
+		return procHistory;
+	}
+	
+	private Channel newChannel(String name, int nbOutputs, boolean addressRouting, RequestHistory history) {
+		Channel channel = new Channel(name, nbOutputs, addressRouting);
+		channel.addListener(history);
+		return channel;
+	}
+	
+	public List<Module> getAllModules() {
+		return moduleList;
+	}
+	
+	public List<Channel> getAllChannels() {
+		return channelList;
+	}
+	
+	public ActivityScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	public void skipCycles(int nbCycles) {
+		scheduler.skipCycles(nbCycles);
+		cycle += nbCycles;
+	}
+	
+	public Processor getProcessor(int srcid) {
+		Processor proc = processorPerSrcid.get(srcid);
+		scheduler.synchronize(proc);
+		return proc;
+	}
+}
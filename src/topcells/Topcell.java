@@ -0,0 +1,53 @@
+package topcells;
+
+import java.util.List;
+
+import model.ActivityScheduler;
+import model.Channel;
+import model.Module;
+import model.Processor;
+import model.Request;
+import model.RequestHistory;
+
+/**
+ * Simple interface to be able to manage different topcells in the controller
+ * @author QLM
+ *
+ */
+public interface Topcell {
+
+	public void simulate1Cycle();
+	
+	public int getNbProcs();
+	
+	public int getNbMem();
+	
+	public int getNbCycles();
+	
+	/**
+	 * @return the requests kept by the history of the cache/memory (resp. processor/cache) channels
+	 */
+	public List<Request> getFinishedCacheRequests();
+	public List<Request> getFinishedProcsRequests();
+	
+	/**
+	 * The histories receive the requests finished in the cache/memory (resp. processor/cache) channels.
+	 * Other listeners (statistics, trace writers, ...) subscribe with addListener(), and the retention
+	 * of the histories can be reduced for long simulations.
+	 */
+	public RequestHistory getCacheRequestHistory();
+	public RequestHistory getProcRequestHistory();
+	
+	public List<Module> getAllModules();
+	public List<Channel> getAllChannels();
+	public ActivityScheduler getScheduler();
+	public Processor getProcessor(int srcid);
+	
+	/**
+	 * Advances all the modules and channels by nbCycles cycles during which nothing happens.
+	 * Must be called only when all the modules are idle and no channel can pop a request
+	 * during these cycles.
+	 */
+	public void skipCycles(int nbCycles);
+	
+}
@@ -0,0 +1,244 @@
+package topcells;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+import model.ArbitrationPolicy;
+import model.NocTopology;
+import model.ReplacementPolicy;
+import model.Request.cmd_t;
+import model.Segment;
+
+/**
+ * Description of a GenericTopcell: number of processors, cache geometry, protocol,
+ * the segments mapped on each memory bank, and the interconnect between the L1 caches and the memory banks.
+ * Segments are stored as descriptions and new Segment objects are created for each
+ * topcell, so that a configuration can be used to build several topcells.
+ * @author QLM
+ *
+ */
+public class TopcellConfig {
+
+	private static class SegmentDesc {
+		String name;
+		long base;
+		int size;
+		boolean cacheable;
+
+		SegmentDesc(String name, long base, int size, boolean cacheable) {
+			this.name = name;
+			this.base = base;
+			this.size = size;
+			this.cacheable = cacheable;
+		}
+	}
+
+	private int nb_procs;
+	private int nways;
+	private int nsets;
+	private int nwords;
+	private Protocol protocol;
+	private int channel_capacity = 0;
+	private boolean in_order_delivery = true;
+	private int flits_per_cycle = 0;
+	private int words_per_flit = 1;
+	private ArbitrationPolicy arbitration = ArbitrationPolicy.ROUND_ROBIN;
+	private ReplacementPolicy replacement = ReplacementPolicy.NRU;
+	private NocTopology noc_topology = null;
+	private int noc_hop_latency = 1;
+	private int noc_buffer_size = 4;
+	private int noc_mesh_width = 0;
+	private Map<cmd_t, Integer> traffic_classes = new EnumMap<cmd_t, Integer>(cmd_t.class);
+
+	private List<List<SegmentDesc>> mem_segments = new ArrayList<List<SegmentDesc>>();
+
+	public TopcellConfig(int nbProcs, int nways, int nsets, int nwords, Protocol protocol) {
+		this.nb_procs = nbProcs;
+		this.nways = nways;
+		this.nsets = nsets;
+		this.nwords = nwords;
+		this.protocol = protocol;
+	}
+
+	/**
+	 * Configuration with nbMems memory banks of memSize bytes each, mapped contiguously from address 0.
+	 */
+	public static TopcellConfig contiguous(int nbProcs, int nbMems, int memSize, int nways, int nsets,
+			int nwords, Protocol protocol) {
+		TopcellConfig config = new TopcellConfig(nbProcs, nways, nsets, nwords, protocol);
+		for (int i = 0; i < nbMems; i++) {
+			int mem = config.addMemory();
+			config.addSegment(mem, "mem_seg" + i, (long) i * memSize, memSize, true);
+		}
+		return config;
+	}
+
+	/**
+	 * Adds a memory bank without any segment.
+	 * @return the id of the new memory bank
+	 */
+	public int addMemory() {
+		mem_segments.add(new ArrayList<SegmentDesc>());
+		return mem_segments.size() - 1;
+	}
+
+	/**
+	 * Maps a segment on the memory bank of id mem.
+	 */
+	public void addSegment(int mem, String name, long base, int size, boolean cacheable) {
+		mem_segments.get(mem).add(new SegmentDesc(name, base, size, cacheable));
+	}
+
+	/**
+	 * Sets the capacity of the channels between the L1 caches and the memory banks (0 for unbounded channels).
+	 */
+	public void setChannelCapacity(int capacity) {
+		channel_capacity = capacity;
+	}
+
+	public int getChannelCapacity() {
+		return channel_capacity;
+	}
+
+	/**
+	 * Sets the delivery mode of the channels between the L1 caches and the memory banks:
+	 * in push order (default) or as soon as the delay of each request has passed.
+	 */
+	public void setInOrderDelivery(boolean inOrder) {
+		in_order_delivery = inOrder;
+	}
+
+	public boolean isInOrderDelivery() {
+		return in_order_delivery;
+	}
+
+	/**
+	 * Limits the bandwidth of the channels between the L1 caches and the memory banks.
+	 * @param flitsPerCycle : number of flits sent per cycle, or 0 for an unlimited bandwidth (default)
+	 * @param wordsPerFlit : number of data words carried by a flit
+	 */
+	public void setBandwidth(int flitsPerCycle, int wordsPerFlit) {
+		flits_per_cycle = flitsPerCycle;
+		words_per_flit = wordsPerFlit;
+	}
+
+	public int getFlitsPerCycle() {
+		return flits_per_cycle;
+	}
+
+	public int getWordsPerFlit() {
+		return words_per_flit;
+	}
+
+	/**
+	 * Sets the arbitration between the sources of the channels whose bandwidth is limited.
+	 */
+	public void setArbitrationPolicy(ArbitrationPolicy policy) {
+		arbitration = policy;
+	}
+
+	public ArbitrationPolicy getArbitrationPolicy() {
+		return arbitration;
+	}
+
+	/**
+	 * Sets the replacement policy of the L1 caches.
+	 */
+	public void setReplacementPolicy(ReplacementPolicy policy) {
+		replacement = policy;
+	}
+
+	public ReplacementPolicy getReplacementPolicy() {
+		return replacement;
+	}
+
+	/**
+	 * Replaces the channels between the L1 caches and the memory banks by networks-on-chip (see NocChannel).
+	 * The L1 cache i is attached to the node i, and the memory bank j to the node nbProcs + j.
+	 * The networks do not model the bandwidth and the traffic classes of the channels: a configuration setting
+	 * them with a topology is rejected by GenericTopcell.
+	 * @param topology : topology of the networks, or null for ideal channels (default)
+	 * @param hopLatency : number of cycles to cross a router
+	 * @param bufferSize : number of requests in the buffer at the end of a link, at least 2
+	 */
+	public void setNoc(NocTopology topology, int hopLatency, int bufferSize) {
+		noc_topology = topology;
+		noc_hop_latency = hopLatency;
+		noc_buffer_size = bufferSize;
+	}
+
+	public NocTopology getNocTopology() {
+		return noc_topology;
+	}
+
+	public int getNocHopLatency() {
+		return noc_hop_latency;
+	}
+
+	public int getNocBufferSize() {
+		return noc_buffer_size;
+	}
+
+	/**
+	 * Sets the number of nodes in a row of a mesh network (0: as square as possible, default)
+	 */
+	public void setNocMeshWidth(int width) {
+		noc_mesh_width = width;
+	}
+
+	public int getNocMeshWidth() {
+		return noc_mesh_width;
+	}
+
+	/**
+	 * Maps a command to a traffic class in the channels between the L1 caches and the memory banks
+	 * (see Channel.setTrafficClass()); unmapped commands are in class 0, of highest priority.
+	 * Commands of different classes can overtake each other, e.g. a miss can reach the memory before
+	 * the write-back sent just before it.
+	 */
+	public void setTrafficClass(cmd_t cmd, int cls) {
+		traffic_classes.put(cmd, cls);
+	}
+
+	public Map<cmd_t, Integer> getTrafficClasses() {
+		return traffic_classes;
+	}
+
+	public int getNbProcs() {
+		return nb_procs;
+	}
+
+	public int getNbMems() {
+		return mem_segments.size();
+	}
+
+	public int getNways() {
+		return nways;
+	}
+
+	public int getNsets() {
+		return nsets;
+	}
+
+	public int getNwords() {
+		return nwords;
+	}
+
+	public Protocol getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * @return new segments for the memory bank of id mem
+	 */
+	Vector<Segment> newSegmentList(int mem) {
+		Vector<Segment> res = new Vector<Segment>();
+		for (SegmentDesc d : mem_segments.get(mem)) {
+			res.add(new Segment(d.name, d.base, d.size, d.cacheable));
+		}
+		return res;
+	}
+}
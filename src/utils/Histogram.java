@@ -0,0 +1,95 @@
+package utils;
+
+/**
+ * Histogram of non-negative integer values with power-of-2 buckets: bucket 0 counts the value 0,
+ * and bucket i > 0 the values in [2^(i-1), 2^i). The sum and the maximum of the values are kept exactly.
+ * @author QLM
+ *
+ */
+public class Histogram {
+
+	private long [] m_buckets = new long[33];
+	private long m_count = 0;
+	private long m_sum = 0;
+	private int m_max = 0;
+
+	public static int bucketOf(int value) {
+		return 32 - Integer.numberOfLeadingZeros(value);
+	}
+
+	/**
+	 * Adds weight occurrences of value
+	 */
+	public void add(int value, long weight) {
+		assert (value >= 0);
+		m_buckets[bucketOf(value)] += weight;
+		m_count += weight;
+		m_sum += value * weight;
+		if (weight > 0 && value > m_max) {
+			m_max = value;
+		}
+	}
+
+	public void add(int value) {
+		add(value, 1);
+	}
+
+	/**
+	 * Adds the values of another histogram to this one
+	 */
+	public void addAll(Histogram h) {
+		for (int i = 0; i < m_buckets.length; i++) {
+			m_buckets[i] += h.m_buckets[i];
+		}
+		m_count += h.m_count;
+		m_sum += h.m_sum;
+		m_max = Math.max(m_max, h.m_max);
+	}
+
+	public long getCount() {
+		return m_count;
+	}
+
+	public double getMean() {
+		return m_count == 0 ? 0 : (double) m_sum / m_count;
+	}
+
+	public int getMax() {
+		return m_max;
+	}
+
+	public long getBucket(int bucket) {
+		return m_buckets[bucket];
+	}
+
+	/**
+	 * @return the upper bound (exclusive) of the bucket containing the fraction q of the values,
+	 *         or 1 if this fraction is only made of zeros
+	 */
+	public int quantileBound(double q) {
+		long target = (long) Math.ceil(q * m_count);
+		long n = 0;
+		for (int i = 0; i < m_buckets.length; i++) {
+			n += m_buckets[i];
+			if (n >= target) {
+				return i == 0 ? 1 : (int) Math.min(Integer.MAX_VALUE, 1L << i);
+			}
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return the non-empty buckets, as "[low,high[:count" items
+	 */
+	public String toString() {
+		String res = "";
+		for (int i = 0; i < m_buckets.length; i++) {
+			if (m_buckets[i] != 0) {
+				long low = i == 0 ? 0 : 1L << (i - 1);
+				long high = i == 0 ? 1 : 1L << i;
+				res += (res.isEmpty() ? "" : " ") + "[" + low + "," + high + "[:" + m_buckets[i];
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,86 @@
+package utils;
+
+/**
+ * Cheap pseudo-random generator implementing the SplitMix64 algorithm (the one of java.util.SplittableRandom,
+ * which is not available in Java 7).
+ * A generator gives the same sequence for the same seed, and split() derives an independent generator, so that
+ * each channel of a simulation can draw its own numbers from a single simulation seed. A generator is not
+ * thread-safe: it must be used by a single thread at a time.
+ * @author QLM
+ *
+ */
+public class SplitRandom {
+
+	private static final long goldenGamma = 0x9e3779b97f4a7c15L;
+
+	private long m_seed;
+	private final long m_gamma;
+
+	public SplitRandom(long seed) {
+		this(seed, goldenGamma);
+	}
+
+	private SplitRandom(long seed, long gamma) {
+		m_seed = seed;
+		m_gamma = gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	private static long mixGamma(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		// gammas with too few bit transitions give poorly distributed sequences
+		int n = Long.bitCount(z ^ (z >>> 1));
+		return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+
+	private long nextSeed() {
+		m_seed += m_gamma;
+		return m_seed;
+	}
+
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * @return a number uniformly distributed between 0 (inclusive) and bound (exclusive)
+	 */
+	public int nextInt(int bound) {
+		assert (bound > 0);
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			return r & m;
+		}
+		// rejects the values of the last incomplete range to avoid any bias
+		for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+		}
+		return r;
+	}
+
+	/**
+	 * @return a number uniformly distributed between min and max, both inclusive
+	 */
+	public int nextInt(int min, int max) {
+		return min + nextInt(max - min + 1);
+	}
+
+	/**
+	 * @return a new generator, whose sequence is independent of the one of this generator
+	 */
+	public SplitRandom split() {
+		return new SplitRandom(nextLong(), mixGamma(nextSeed()));
+	}
+}
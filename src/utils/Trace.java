@@ -0,0 +1,262 @@
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Trace sink shared by all the tracers.
+ * Events are written by the simulation threads into a bounded lock-free ring (multiple producers,
+ * one consumer); each slot has a sequence number telling whether it is free or published.
+ * A background daemon thread formats the published events and writes them to the output.
+ * Producers wait when the ring is full, so that no event is lost.
+ * Events of modules simulated in parallel during the same cycle can appear in any order.
+ * @author QLM
+ *
+ */
+public final class Trace {
+
+	public enum Level {
+		OFF, // nothing
+		INFO, // requests sent and received, cycles
+		DEBUG, // FSM states and directory accesses
+	}
+
+	static final int kindRequest = 0;
+	static final int kindValue = 1;
+	static final int kindFormat1 = 2;
+	static final int kindFormat2 = 3;
+
+	private static final int capacity = 1 << 13;
+	private static final int mask = capacity - 1;
+	private static final int maxDataWords = 16;
+
+	// Slot layout: kind, a, b, srcid, tgtid, ndata, data words
+	private static final int slotWidth = 6 + maxDataWords;
+	private static final long [] s_longs = new long[capacity * slotWidth];
+	// Slot layout: module name, label or format, value or cmd
+	private static final Object [] s_objs = new Object[capacity * 3];
+	private static final AtomicLongArray s_seq = new AtomicLongArray(capacity);
+	private static final AtomicLong s_tail = new AtomicLong();
+	private static volatile long s_written = 0;
+
+	private static volatile PrintStream s_out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+	private static Thread s_writer = null;
+
+	private static Level s_default_level = Level.DEBUG;
+	private static List<String> s_prefixes = new ArrayList<String>();
+	private static List<Level> s_levels = new ArrayList<Level>();
+
+	static {
+		for (int i = 0; i < capacity; i++) {
+			s_seq.set(i, i);
+		}
+	}
+
+	private Trace() {
+	}
+
+	/**
+	 * Sets the level of the tracers created afterwards which are not matched by a setLevel prefix.
+	 */
+	public static synchronized void setDefaultLevel(Level level) {
+		s_default_level = level;
+	}
+
+	/**
+	 * Sets the level of the tracers created afterwards whose name starts with prefix.
+	 * The last matching prefix wins.
+	 */
+	public static synchronized void setLevel(String prefix, Level level) {
+		s_prefixes.add(prefix);
+		s_levels.add(level);
+	}
+
+	/**
+	 * Sets the stream to which events are written. Pending events are written to the previous stream.
+	 */
+	public static synchronized void setOutput(PrintStream out) {
+		flush();
+		s_out = out;
+	}
+
+	/**
+	 * @return a new tracer for the module name, with the level configured for it
+	 */
+	public static synchronized Tracer getTracer(String name) {
+		Level level = s_default_level;
+		for (int i = 0; i < s_prefixes.size(); i++) {
+			if (name.startsWith(s_prefixes.get(i))) {
+				level = s_levels.get(i);
+			}
+		}
+		return new Tracer(name, level);
+	}
+
+	/**
+	 * Waits until all the events published before the call are written and the output is flushed.
+	 */
+	public static void flush() {
+		long target = s_tail.get();
+		while (s_written < target) {
+			LockSupport.parkNanos(100000);
+		}
+	}
+
+	private static synchronized void startWriter() {
+		if (s_writer != null) {
+			return;
+		}
+		s_writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "trace-writer");
+		s_writer.setDaemon(true);
+		s_writer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				flush();
+			}
+		});
+	}
+
+	/**
+	 * Reserves the next slot of the ring, waiting for it to be free.
+	 * @return the sequence number of the slot
+	 */
+	private static long claim() {
+		if (s_writer == null) {
+			startWriter();
+		}
+		long pos = s_tail.getAndIncrement();
+		int idx = (int) (pos & mask);
+		while (s_seq.get(idx) != pos) {
+			Thread.yield();
+		}
+		return pos;
+	}
+
+	private static void release(long pos) {
+		s_seq.lazySet((int) (pos & mask), pos + 1);
+	}
+
+	static void publish(int kind, String name, String label, Object value, long a, long b) {
+		long pos = claim();
+		int idx = (int) (pos & mask);
+		int l = idx * slotWidth;
+		int o = idx * 3;
+		s_longs[l] = kind;
+		s_longs[l + 1] = a;
+		s_longs[l + 2] = b;
+		s_objs[o] = name;
+		s_objs[o + 1] = label;
+		s_objs[o + 2] = value;
+		release(pos);
+	}
+
+	static void publishRequest(String name, String label, long addr, int srcid, int tgtid, Object cmd, long [] data, int nwords) {
+		long pos = claim();
+		int idx = (int) (pos & mask);
+		int l = idx * slotWidth;
+		int o = idx * 3;
+		s_longs[l] = kindRequest;
+		s_longs[l + 1] = addr;
+		s_longs[l + 3] = srcid;
+		s_longs[l + 4] = tgtid;
+		if (nwords == 0) {
+			s_longs[l + 5] = -1;
+		}
+		else {
+			s_longs[l + 5] = nwords;
+			System.arraycopy(data, 0, s_longs, l + 6, Math.min(nwords, maxDataWords));
+		}
+		s_objs[o] = name;
+		s_objs[o + 1] = label;
+		s_objs[o + 2] = cmd;
+		release(pos);
+	}
+
+	private static void format(StringBuilder sb, int idx) {
+		int l = idx * slotWidth;
+		int o = idx * 3;
+		switch ((int) s_longs[l]) {
+		case kindRequest:
+			sb.append(s_objs[o]).append(s_objs[o + 1]).append('\n');
+			sb.append("--- Request ---\n");
+			sb.append("    address: 0x").append(Long.toHexString(s_longs[l + 1])).append('\n');
+			sb.append("    srcid: ").append(s_longs[l + 3]).append('\n');
+			sb.append("    tgtid: ").append(s_longs[l + 4]).append('\n');
+			sb.append("    cmd: ").append(s_objs[o + 2]).append('\n');
+			int ndata = (int) s_longs[l + 5];
+			if (ndata >= 0) {
+				sb.append("    ndata_words: ").append(ndata).append('\n');
+				sb.append("    data: [ ");
+				for (int i = 0; i < ndata && i < maxDataWords; i++) {
+					if (i > 0) {
+						sb.append(", ");
+					}
+					sb.append(s_longs[l + 6 + i]);
+				}
+				if (ndata > maxDataWords) {
+					sb.append(", ...");
+				}
+				sb.append(" ]\n");
+			}
+			else {
+				sb.append("    ndata_words: 0\n");
+			}
+			sb.append("--- End Request ---\n\n");
+			break;
+		case kindValue:
+			sb.append(s_objs[o]).append(s_objs[o + 1]).append(s_objs[o + 2]).append('\n');
+			break;
+		case kindFormat1:
+			sb.append(String.format((String) s_objs[o + 1], s_longs[l + 1])).append('\n');
+			break;
+		case kindFormat2:
+			sb.append(String.format((String) s_objs[o + 1], s_longs[l + 1], s_longs[l + 2])).append('\n');
+			break;
+		}
+		s_objs[o] = null;
+		s_objs[o + 1] = null;
+		s_objs[o + 2] = null;
+	}
+
+	/**
+	 * Body of the writer thread
+	 */
+	private static void write() {
+		StringBuilder sb = new StringBuilder();
+		long head = 0;
+		while (true) {
+			int idx = (int) (head & mask);
+			if (s_seq.get(idx) == head + 1) {
+				format(sb, idx);
+				s_seq.lazySet(idx, head + capacity);
+				head++;
+				if (sb.length() > 1 << 14) {
+					s_out.print(sb);
+					sb.setLength(0);
+				}
+			}
+			else {
+				if (sb.length() > 0) {
+					s_out.print(sb);
+					sb.setLength(0);
+				}
+				if (s_written != head) {
+					s_out.flush();
+					s_written = head;
+				}
+				LockSupport.parkNanos(50000);
+			}
+		}
+	}
+}
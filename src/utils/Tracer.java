@@ -0,0 +1,73 @@
+package utils;
+
+/**
+ * Trace handle of a module, with its own trace level.
+ * Call sites test the level before building an event, so that a disabled tracer costs
+ * a field read and a comparison:
+ *     if (m_tracer.info()) m_tracer.value(" next state: ", r_fsm_state);
+ * Events only capture primitive values and references to immutable objects (strings, enums);
+ * they are formatted by the trace writer thread.
+ * @author QLM
+ *
+ */
+public class Tracer {
+
+	private String m_name;
+	private int m_level;
+
+	Tracer(String name, Trace.Level level) {
+		m_name = name;
+		m_level = level.ordinal();
+	}
+
+	public String getName() {
+		return m_name;
+	}
+
+	public Trace.Level getLevel() {
+		return Trace.Level.values()[m_level];
+	}
+
+	public void setLevel(Trace.Level level) {
+		m_level = level.ordinal();
+	}
+
+	public boolean info() {
+		return m_level >= 1;
+	}
+
+	public boolean debug() {
+		return m_level >= 2;
+	}
+
+	/**
+	 * Traces a request, printed as "<name><label>" followed by the request.
+	 * @param cmd command of the request (enum value)
+	 * @param data data words of the request, copied
+	 * @param nwords number of valid words in data, 0 if the request has no data
+	 */
+	public void request(String label, long addr, int srcid, int tgtid, Object cmd, long [] data, int nwords) {
+		Trace.publishRequest(m_name, label, addr, srcid, tgtid, cmd, data, nwords);
+	}
+
+	/**
+	 * Traces "<name><label><value>"; value must be immutable, e.g. an enum value.
+	 */
+	public void value(String label, Object value) {
+		Trace.publish(Trace.kindValue, m_name, label, value, 0, 0);
+	}
+
+	/**
+	 * Traces String.format(format, a).
+	 */
+	public void format(String format, long a) {
+		Trace.publish(Trace.kindFormat1, m_name, format, null, a, 0);
+	}
+
+	/**
+	 * Traces String.format(format, a, b).
+	 */
+	public void format(String format, long a, long b) {
+		Trace.publish(Trace.kindFormat2, m_name, format, null, a, b);
+	}
+}